@@ -0,0 +1,85 @@
+package com.company.csvconverter.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared setup for the JMH benchmarks: the conversion services wired by Spring
+ * (same @Value defaults as the application) and synthetic interchange CSVs
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Context with only the services the conversion pipeline needs
+     * (no web layer, no job executor, no result cache)
+     * Classifications live in a scratch directory (journal without fsync), so every trial starts
+     * from the defaults and never touches data/ in the working directory; it is deleted on close
+     */
+    static AnnotationConfigApplicationContext createContext() {
+        Path classificationDir;
+        try {
+            classificationDir = Files.createTempDirectory("benchmark-classifications-");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+            "converter.classifications.dir", classificationDir.toString(),
+            "converter.classifications.journal.fsync", "false")));
+
+        // Registered before the services, so it is destroyed after ClassificationService closes the journal
+        context.getDefaultListableBeanFactory().registerDisposableBean("benchmarkClassificationDir",
+            (DisposableBean) () -> FileSystemUtils.deleteRecursively(classificationDir));
+
+        context.register(
+            ClassificationService.class,
+            DataProcessingService.class,
+            ExcelStyleService.class,
+            ExcelStructureService.class,
+            ExcelWriterService.class);
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * Writes a synthetic interchange CSV with the given number of data rows
+     * Uses the generator's default unknown wagon type share (2%), so the classification-miss path is covered
+     * (misses are counted on ConversionStats and logged once per file, not per row)
+     */
+    static void writeCsv(Path file, int rows, long seed) throws Exception {
+        new InterchangeCsvGenerator()
+            .rows(rows)
+            .seed(seed)
+            .write(file);
+    }
+
+    /**
+     * Classified, zone-sorted rows (header first) as the report writers receive them
+     */
+    static List<String[]> classifiedRows(DataProcessingService dataProcessingService,
+                                         ClassificationSnapshot classifications, int rows, long seed) throws Exception {
+        Path file = Files.createTempFile("benchmark-", ".csv");
+        try {
+            writeCsv(file, rows, seed);
+            try (var inputStream = Files.newInputStream(file)) {
+                return new ArrayList<>(dataProcessingService.processCsv(inputStream, classifications, row -> { }));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
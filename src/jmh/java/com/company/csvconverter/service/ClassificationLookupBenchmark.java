@@ -0,0 +1,46 @@
+package com.company.csvconverter.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassificationService.getClassification for known and unknown wagon types
+ * (raw input as it appears in the CSV: mixed case and surrounding spaces)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassificationLookupBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+    private ClassificationService classificationService;
+
+    private final String knownType = " boxn ";
+    private final String unknownType = " xyz99 ";
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.createContext();
+        classificationService = context.getBean(ClassificationService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String hit() {
+        return classificationService.getClassification(knownType);
+    }
+
+    @Benchmark
+    public String miss() {
+        return classificationService.getClassification(unknownType);
+    }
+}
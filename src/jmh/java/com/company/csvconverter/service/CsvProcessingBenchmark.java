@@ -0,0 +1,68 @@
+package com.company.csvconverter.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse + classify + sort (the /upload path behind processCsvFile, streamed with OpenCSV or
+ * memory-mapped and byte-scanned) and parse + classify + aggregate (the /convert path) on synthetic CSVs
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CsvProcessingBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int rows;
+
+    private AnnotationConfigApplicationContext context;
+    private DataProcessingService dataProcessingService;
+    private ClassificationSnapshot classifications;
+    private Path csvFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkSupport.createContext();
+        dataProcessingService = context.getBean(DataProcessingService.class);
+        classifications = context.getBean(ClassificationService.class).getSnapshot();
+
+        csvFile = Files.createTempFile("benchmark-" + rows + "-", ".csv");
+        BenchmarkSupport.writeCsv(csvFile, rows, 42L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(csvFile);
+        context.close();
+    }
+
+    @Benchmark
+    public void processCsv(Blackhole blackhole) throws Exception {
+        try (InputStream inputStream = Files.newInputStream(csvFile)) {
+            blackhole.consume(dataProcessingService.processCsv(inputStream, classifications, row -> { }));
+        }
+    }
+
+    @Benchmark
+    public void processMappedCsv(Blackhole blackhole) throws Exception {
+        blackhole.consume(dataProcessingService.processCsv(csvFile, classifications, row -> { }, new ConversionStats()));
+    }
+
+    @Benchmark
+    public void aggregateCsv(Blackhole blackhole) throws Exception {
+        StationAggregator aggregator = new StationAggregator();
+        try (InputStream inputStream = Files.newInputStream(csvFile)) {
+            dataProcessingService.streamCsv(inputStream, classifications, aggregator::accept);
+        }
+        blackhole.consume(aggregator.toOrderedMap());
+    }
+}
@@ -0,0 +1,58 @@
+package com.company.csvconverter.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Workbook generation: the final report, the intermediate 10-column workbook and both of them
+ * as /upload builds them (concurrently when the heap allows)
+ * Written to a discarding stream so only the workbook cost is measured, not a byte[] copy
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExcelWriteBenchmark {
+
+    @Param({"10000", "100000"})
+    int rows;
+
+    private AnnotationConfigApplicationContext context;
+    private ExcelWriterService excelWriterService;
+    private List<String[]> classifiedData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkSupport.createContext();
+        excelWriterService = context.getBean(ExcelWriterService.class);
+        classifiedData = BenchmarkSupport.classifiedRows(context.getBean(DataProcessingService.class),
+            context.getBean(ClassificationService.class).getSnapshot(), rows, 42L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void createExcelReport() throws Exception {
+        excelWriterService.writeExcelReport(classifiedData, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void createIntermediateExcel() throws Exception {
+        excelWriterService.writeIntermediateExcel(classifiedData, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void createExcelFiles() throws Exception {
+        excelWriterService.writeExcelFiles(classifiedData, OutputStream.nullOutputStream(), OutputStream.nullOutputStream(),
+            new ConversionStats());
+    }
+}
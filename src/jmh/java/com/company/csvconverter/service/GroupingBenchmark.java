@@ -0,0 +1,55 @@
+package com.company.csvconverter.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per IC STTN grouping of classified rows: the list path (groupDataByIcSttn over sorted rows)
+ * and the streaming path (StationAggregator over the same rows)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class GroupingBenchmark {
+
+    @Param({"10000", "100000"})
+    int rows;
+
+    private AnnotationConfigApplicationContext context;
+    private ExcelWriterService excelWriterService;
+    private List<String[]> classifiedData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkSupport.createContext();
+        excelWriterService = context.getBean(ExcelWriterService.class);
+        classifiedData = BenchmarkSupport.classifiedRows(context.getBean(DataProcessingService.class),
+            context.getBean(ClassificationService.class).getSnapshot(), rows, 42L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, StationData> groupDataByIcSttn() {
+        return excelWriterService.groupDataByIcSttn(classifiedData);
+    }
+
+    @Benchmark
+    public Map<String, StationData> stationAggregator() {
+        StationAggregator aggregator = new StationAggregator();
+        for (int i = 1; i < classifiedData.size(); i++) {
+            aggregator.accept(classifiedData.get(i));
+        }
+        return aggregator.toOrderedMap();
+    }
+}
@@ -0,0 +1,173 @@
+package com.company.csvconverter.service;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic generator of interchange CSVs in the layout DataProcessingService expects:
+ * two preamble rows, the header at row 3, the target columns among a few unrelated ones
+ * Zones and IC STTNs come from the ZoneOrder tables, wagon types from the default classifications.
+ * Rows are written one at a time, so multi-GB files never sit in memory.
+ *
+ * Usage: InterchangeCsvGenerator --out=big.csv [--rows=1000000] [--seed=42]
+ *        [--unknown-share=0.02] [--loaded-ratio=0.6] [--skew=1.0]
+ */
+public class InterchangeCsvGenerator {
+
+    static final String[] HEADER = {
+        "SNO", "WAGON NO", "ZONE TO", "IC STTN",
+        "HANDED OVER STTN TO", "HANDED OVER L/E", "HANDED OVER TYPE",
+        "TAKEN OVER STTN TO", "TAKEN OVER L/E", "TAKEN OVER TYPE", "REMARKS"
+    };
+
+    // Distinct unknown wagon types (unknowns repeat in real files: typos, new types)
+    private static final int UNKNOWN_TYPE_COUNT = 200;
+
+    private long rows = 100_000;
+    private long seed = 42;
+    private double unknownShare = 0.02;
+    private double loadedRatio = 0.6;
+    private double skew = 1.0;
+
+    public InterchangeCsvGenerator rows(long rows) {
+        this.rows = rows;
+        return this;
+    }
+
+    public InterchangeCsvGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Share of wagon types (0..1) that have no classification
+     */
+    public InterchangeCsvGenerator unknownShare(double unknownShare) {
+        this.unknownShare = unknownShare;
+        return this;
+    }
+
+    /**
+     * Share of L (loaded) wagons, the rest are E (empty)
+     */
+    public InterchangeCsvGenerator loadedRatio(double loadedRatio) {
+        this.loadedRatio = loadedRatio;
+        return this;
+    }
+
+    /**
+     * Zipf exponent over the (zone, IC STTN) pairs: 0 is uniform, larger values concentrate
+     * the rows on a few stations (the hot stations are picked by the seed)
+     */
+    public InterchangeCsvGenerator skew(double skew) {
+        this.skew = skew;
+        return this;
+    }
+
+    public void write(Path file) throws Exception {
+        try (BufferedWriter writer = new BufferedWriter(
+                Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 20)) {
+            write(writer);
+        }
+    }
+
+    public void write(Writer writer) throws Exception {
+        Random random = new Random(seed);
+
+        // (zone, IC STTN) pairs with a cumulative Zipf distribution in a seeded order
+        List<String[]> pairs = new ArrayList<>();
+        List<String> stations = new ArrayList<>();
+        for (String zone : ZoneOrder.zones()) {
+            for (String icSttn : ZoneOrder.icSttns(zone)) {
+                pairs.add(new String[]{zone, icSttn});
+                stations.add(icSttn);
+            }
+        }
+        Collections.shuffle(pairs, random);
+        double[] cumulative = new double[pairs.size()];
+        double total = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            total += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+
+        Map<String, String> classifications = new HashMap<>();
+        ClassificationService.loadDefaultClassifications(classifications);
+        String[] knownTypes = classifications.keySet().toArray(new String[0]);
+        Arrays.sort(knownTypes);
+
+        writer.write("NORTHERN REGION INTERCHANGE REPORT\n");
+        writer.write("Generated (seed " + seed + "),,\n");
+        writer.write(String.join(",", HEADER));
+        writer.write('\n');
+
+        StringBuilder line = new StringBuilder(128);
+        for (long i = 0; i < rows; i++) {
+            int pair = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            String[] zoneAndIcSttn = pairs.get(pair >= 0 ? pair : Math.min(-pair - 1, cumulative.length - 1));
+
+            line.setLength(0);
+            line.append(i + 1).append(',')
+                .append(10_000_000 + random.nextInt(90_000_000)).append(',')
+                .append(zoneAndIcSttn[0]).append(',')
+                .append(zoneAndIcSttn[1]).append(',');
+            appendMovement(line, random, stations, knownTypes);
+            line.append(',');
+            appendMovement(line, random, stations, knownTypes);
+            line.append(",OK\n");
+            writer.append(line);
+        }
+    }
+
+    /**
+     * STTN TO, L/E, TYPE of one side (handed over / taken over)
+     */
+    private void appendMovement(StringBuilder line, Random random, List<String> stations, String[] knownTypes) {
+        line.append(stations.get(random.nextInt(stations.size()))).append(',')
+            .append(random.nextDouble() < loadedRatio ? 'L' : 'E').append(',');
+        if (random.nextDouble() < unknownShare) {
+            line.append("UNK").append(random.nextInt(UNKNOWN_TYPE_COUNT));
+        } else {
+            line.append(knownTypes[random.nextInt(knownTypes.length)]);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        InterchangeCsvGenerator generator = new InterchangeCsvGenerator();
+        Path out = null;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            switch (option[0]) {
+                case "--out" -> out = Paths.get(option[1]);
+                case "--rows" -> generator.rows(Long.parseLong(option[1]));
+                case "--seed" -> generator.seed(Long.parseLong(option[1]));
+                case "--unknown-share" -> generator.unknownShare(Double.parseDouble(option[1]));
+                case "--loaded-ratio" -> generator.loadedRatio(Double.parseDouble(option[1]));
+                case "--skew" -> generator.skew(Double.parseDouble(option[1]));
+                default -> throw new IllegalArgumentException("Unknown option " + option[0]);
+            }
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("--out=<file> is required");
+        }
+
+        long start = System.currentTimeMillis();
+        generator.write(out);
+        System.out.println("Wrote " + generator.rows + " rows to " + out + " (" + Files.size(out) + " bytes) in "
+            + (System.currentTimeMillis() - start) + " ms");
+    }
+}
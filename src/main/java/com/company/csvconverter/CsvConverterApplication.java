@@ -2,8 +2,10 @@ package com.company.csvconverter;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class CsvConverterApplication {
     public static void main(String[] args) {
         SpringApplication.run(CsvConverterApplication.class, args);
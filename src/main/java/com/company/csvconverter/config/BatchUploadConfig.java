@@ -0,0 +1,39 @@
+package com.company.csvconverter.config;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * Multipart limits for /convert/batch only
+ * The container enforces multipart limits per servlet, so the batch endpoint is served by a second
+ * DispatcherServlet on the same application context (same controllers, filters and error handling)
+ * whose request limit fits a full batch. Every other endpoint keeps spring.servlet.multipart.max-request-size.
+ */
+@Configuration
+public class BatchUploadConfig {
+
+    // Total size of one /convert/batch request (each file is still limited by spring.servlet.multipart.max-file-size)
+    @Value("${converter.batch.max-request-size:120MB}")
+    private DataSize maxRequestSize = DataSize.ofMegabytes(120);
+
+    @Bean
+    public ServletRegistrationBean<DispatcherServlet> batchDispatcherServlet(WebApplicationContext applicationContext,
+                                                                           MultipartProperties multipartProperties) {
+        ServletRegistrationBean<DispatcherServlet> registration =
+            new ServletRegistrationBean<>(new DispatcherServlet(applicationContext), "/convert/batch");
+        registration.setName("batchDispatcherServlet");
+        registration.setLoadOnStartup(1);
+
+        MultipartConfigElement defaults = multipartProperties.createMultipartConfig();
+        registration.setMultipartConfig(new MultipartConfigElement(defaults.getLocation(), defaults.getMaxFileSize(),
+            maxRequestSize.toBytes(), defaults.getFileSizeThreshold()));
+        return registration;
+    }
+}
@@ -1,27 +1,53 @@
 package com.company.csvconverter.controller;
 
+import com.company.csvconverter.service.BatchConversionService;
+import com.company.csvconverter.service.ClassificationService;
+import com.company.csvconverter.service.ClassificationSnapshot;
+import com.company.csvconverter.service.ConversionMetrics;
+import com.company.csvconverter.service.ConversionResultCache;
+import com.company.csvconverter.service.ConversionResultCache.Artifact;
+import com.company.csvconverter.service.ConversionStats;
 import com.company.csvconverter.service.DataProcessingService;
 import com.company.csvconverter.service.ExcelWriterService;
+import com.company.csvconverter.service.StationAggregator;
+import com.company.csvconverter.service.UploadAdmissionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Controller
 public class FileController {
     
+    private static final Logger log = LoggerFactory.getLogger(FileController.class);
+    
     
     @Autowired
     private DataProcessingService dataProcessingService; // NEW: For 10-column processing
@@ -29,6 +55,21 @@ public class FileController {
     @Autowired
     private ExcelWriterService excelWriterService; // NEW: For dual Excel generation
     
+    @Autowired
+    private ClassificationService classificationService;
+    
+    @Autowired
+    private ConversionResultCache resultCache;
+    
+    @Autowired
+    private ConversionMetrics conversionMetrics;
+    
+    @Autowired
+    private UploadAdmissionService uploadAdmission;
+    
+    @Autowired
+    private BatchConversionService batchConversionService;
+    
     @GetMapping("/")
     public String uploadPage() {
         return "upload";
@@ -38,27 +79,157 @@ public class FileController {
      * Original convert endpoint - KEEP for backwards compatibility
      */
     @PostMapping("/convert")
-    public ResponseEntity<ByteArrayResource> convertCsvToExcel(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<StreamingResponseBody> convertCsvToExcel(@RequestParam("file") MultipartFile file) {
+        UploadAdmissionService.Permit permit;
         try {
-            // Process CSV file (extract 8 columns + add 2 classifications = 10 columns)
-            List<String[]> classifiedData = dataProcessingService.processCsvFile(file);
-            
-            // Create the final formatted Excel report
-            byte[] excelData = excelWriterService.createExcelReport(classifiedData);
-            
-            ByteArrayResource resource = new ByteArrayResource(excelData);
+            // Only the upload is held (rows are aggregated as they are parsed)
+            permit = uploadAdmission.admit(file, false);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadAdmission.getRetryAfterSeconds()))
+                    .build();
+        } catch (Exception e) {
+            log.error("Error in /convert endpoint", e);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        ConversionStats stats = conversionMetrics.start("/convert");
+        try {
+            ClassificationSnapshot classifications = classificationService.getSnapshot();
+            String contentHash = resultCache.hash(file);
             
             // Generate unique filename with timestamp
             String filename = "zonal-interchange-report-" + getCurrentTimestamp() + ".xlsx";
             
+            ConversionResultCache.Hit cached = resultCache.get(contentHash, classifications.getGeneration(), Artifact.REPORT);
+            stats.setCacheHit(cached != null);
+            if (cached != null) {
+                // Same file and same classifications: return the stored report without parsing
+                stats.addBytesIn(file.getSize());
+                StreamingResponseBody body = outputStream -> {
+                    try (cached) {
+                        cached.transferTo(outputStream);
+                    }
+                    stats.addBytesOut(cached.getSize());
+                    conversionMetrics.record(stats, true);
+                };
+                
+                return ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                        .header("X-Classification-Generation", String.valueOf(classifications.getGeneration()))
+                        .header("X-Cache", "HIT")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .contentLength(cached.getSize())
+                        .body(releasing(permit, stats, body, cached));
+            }
+            
+            // Parse, classify and aggregate per IC STTN in one pass (no row list, no row sort)
+            StationAggregator aggregator = dataProcessingService.aggregateCsvFile(file, classifications, stats);
+            
+            // Write the final formatted Excel report straight into the response (and into the cache)
+            StreamingResponseBody body = outputStream -> {
+                ConversionResultCache.CapturingOutputStream capture = resultCache.capture(outputStream,
+                    contentHash, classifications.getGeneration(), Artifact.REPORT, aggregator.getRowCount());
+                try {
+                    excelWriterService.writeExcelReport(aggregator, capture, stats);
+                    capture.flush();
+                    capture.commit();
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Failed to write Excel report: " + e.getMessage(), e);
+                } finally {
+                    capture.discard();
+                }
+                conversionMetrics.record(stats, true);
+            };
+            
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                    .header("X-Classification-Generation", String.valueOf(classifications.getGeneration()))
+                    .header("X-Cache", "MISS")
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .contentLength(excelData.length)
-                    .body(resource);
+                    .body(releasing(permit, stats, body));
                     
         } catch (Exception e) {
-            System.err.println("❌ Error in /convert endpoint: " + e.getMessage());
+            permit.close();
+            conversionMetrics.record(stats, false);
+            log.error("Error in /convert endpoint", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Batch convert endpoint: one CSV per division in a single request, all classified against the same
+     * snapshot and aggregated in parallel. format=zip (default) returns a ZIP with one report per file,
+     * format=workbook a single workbook with one report sheet per file
+     */
+    @PostMapping("/convert/batch")
+    public ResponseEntity<StreamingResponseBody> convertBatch(@RequestParam("files") List<MultipartFile> files,
+                                                              @RequestParam(value = "format", defaultValue = "zip") String format) {
+        boolean singleWorkbook = "workbook".equals(format);
+        if (!singleWorkbook && !"zip".equals(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        UploadAdmissionService.Permit permit;
+        try {
+            // The uploads and their aggregates are held together until the response is written
+            permit = uploadAdmission.admit(files, false);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadAdmission.getRetryAfterSeconds()))
+                    .build();
+        } catch (Exception e) {
+            log.error("Error in /convert/batch endpoint", e);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        ConversionStats stats = conversionMetrics.start("/convert/batch");
+        try {
+            ClassificationSnapshot classifications = classificationService.getSnapshot();
+            List<BatchConversionService.BatchFile> batch = batchConversionService.aggregate(files, classifications, stats);
+            int dataRows = batch.stream().mapToInt(BatchConversionService.BatchFile::getDataRows).sum();
+            
+            String timestamp = getCurrentTimestamp();
+            String filename = singleWorkbook
+                    ? "zonal-interchange-report-" + timestamp + ".xlsx"
+                    : "zonal-interchange-reports-" + timestamp + ".zip";
+            
+            StreamingResponseBody body = outputStream -> {
+                try {
+                    if (singleWorkbook) {
+                        batchConversionService.writeWorkbook(batch, outputStream, stats);
+                    } else {
+                        batchConversionService.writeZip(batch, outputStream, stats);
+                    }
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Failed to write batch reports: " + e.getMessage(), e);
+                }
+                conversionMetrics.record(stats, true);
+                log.atInfo().setMessage("Batch reports written")
+                    .addKeyValue("files", batch.size())
+                    .addKeyValue("rows", dataRows)
+                    .addKeyValue("format", format)
+                    .log();
+            };
+            
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                    .header("X-Files", String.valueOf(batch.size()))
+                    .header("X-Data-Rows", String.valueOf(dataRows))
+                    .header("X-Classification-Generation", String.valueOf(classifications.getGeneration()))
+                    .contentType(singleWorkbook
+                            ? MediaType.APPLICATION_OCTET_STREAM
+                            : MediaType.parseMediaType("application/zip"))
+                    .body(releasing(permit, stats, body));
+            
+        } catch (Exception e) {
+            permit.close();
+            conversionMetrics.record(stats, false);
+            log.error("Error in /convert/batch endpoint", e);
             return ResponseEntity.badRequest().build();
         }
     }
@@ -69,13 +240,50 @@ public class FileController {
     @PostMapping("/upload")
     @ResponseBody
     public ResponseEntity<?> uploadFile(@RequestParam("file") MultipartFile file) {
+        // Rows, both workbooks and their Base64 copies are all held until the response is built
+        UploadAdmissionService.Permit permit = null;
+        ConversionStats stats = null;
         try {
-            // Process the CSV file (extract 8 columns + add 2 classifications = 10 columns)
-            List<String[]> classifiedData = dataProcessingService.processCsvFile(file);
+            permit = uploadAdmission.admit(file, true);
+            stats = conversionMetrics.start("/upload");
+            ClassificationSnapshot classifications = classificationService.getSnapshot();
+            long generation = classifications.getGeneration();
+            String contentHash = resultCache.hash(file);
+            
+            byte[] intermediateExcel = null;
+            byte[] finalExcel = null;
+            int dataRows = 0;
             
-            // Create BOTH Excel files
-            byte[] intermediateExcel = excelWriterService.createIntermediateExcel(classifiedData);
-            byte[] finalExcel = excelWriterService.createExcelReport(classifiedData);
+            // Same file and same classifications: reuse both stored workbooks without parsing
+            try (ConversionResultCache.Hit cachedIntermediate = resultCache.get(contentHash, generation, Artifact.INTERMEDIATE);
+                 ConversionResultCache.Hit cachedFinal = resultCache.get(contentHash, generation, Artifact.REPORT)) {
+                if (cachedIntermediate != null && cachedFinal != null) {
+                    intermediateExcel = cachedIntermediate.readAllBytes();
+                    finalExcel = cachedFinal.readAllBytes();
+                    dataRows = cachedFinal.getDataRows();
+                }
+            }
+            boolean cacheHit = finalExcel != null;
+            stats.setCacheHit(cacheHit);
+            
+            if (cacheHit) {
+                stats.addBytesIn(file.getSize());
+                stats.addBytesOut(intermediateExcel.length + finalExcel.length);
+            } else {
+                // Process the CSV file (extract 8 columns + add 2 classifications = 10 columns)
+                List<String[]> classifiedData = dataProcessingService.processCsvFile(file, classifications, stats);
+                dataRows = classifiedData.size() - 1; // Exclude header
+                
+                // Create BOTH Excel files (concurrently when the heap has room for both)
+                ByteArrayOutputStream intermediateStream = new ByteArrayOutputStream();
+                ByteArrayOutputStream finalStream = new ByteArrayOutputStream();
+                excelWriterService.writeExcelFiles(classifiedData, intermediateStream, finalStream, stats);
+                intermediateExcel = intermediateStream.toByteArray();
+                finalExcel = finalStream.toByteArray();
+                
+                resultCache.put(contentHash, generation, Artifact.INTERMEDIATE, dataRows, intermediateExcel);
+                resultCache.put(contentHash, generation, Artifact.REPORT, dataRows, finalExcel);
+            }
             
             // Create response with both files
             Map<String, Object> response = new HashMap<>();
@@ -84,22 +292,211 @@ public class FileController {
             response.put("intermediateFileName", "intermediate-10-columns-" + getCurrentTimestamp() + ".xlsx");
             response.put("finalFileName", "zonal-interchange-report-" + getCurrentTimestamp() + ".xlsx");
             response.put("message", "✅ Both Excel files generated successfully!");
-            response.put("dataRows", classifiedData.size() - 1); // Exclude header
+            response.put("dataRows", dataRows);
+            response.put("classificationGeneration", generation);
+            response.put("cached", cacheHit);
             
-            System.out.println("✅ Dual Excel files generated successfully!");
-            System.out.println("📊 Processed " + (classifiedData.size() - 1) + " data rows");
+            log.atInfo().setMessage("Dual Excel files generated")
+                .addKeyValue("rows", dataRows)
+                .addKeyValue("cached", cacheHit)
+                .log();
             
+            conversionMetrics.record(stats, true);
             return ResponseEntity.ok(response);
             
+        } catch (RejectedExecutionException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", true);
+            errorResponse.put("message", "❌ Too many conversions in progress, please retry later");
+            
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadAdmission.getRetryAfterSeconds()))
+                    .body(errorResponse);
+            
         } catch (Exception e) {
-            System.err.println("❌ Error in /upload endpoint: " + e.getMessage());
-            e.printStackTrace();
+            if (stats != null) {
+                conversionMetrics.record(stats, false);
+            }
+            log.error("Error in /upload endpoint", e);
             
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", true);
             errorResponse.put("message", "❌ Error processing file: " + e.getMessage());
             
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+        }
+    }
+    
+    /**
+     * Upload endpoint variant (?format=zip) that streams both Excel files as one ZIP
+     * straight into the response (no byte[] or Base64 per workbook)
+     * Row count, file names and classification generation go in the response headers
+     */
+    @PostMapping(value = "/upload", params = "format=zip")
+    public ResponseEntity<StreamingResponseBody> uploadFileAsZip(@RequestParam("file") MultipartFile file) {
+        UploadAdmissionService.Permit permit;
+        try {
+            permit = uploadAdmission.admit(file, true);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadAdmission.getRetryAfterSeconds()))
+                    .build();
+        } catch (Exception e) {
+            log.error("Error in /upload (zip) endpoint", e);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        ConversionStats stats = conversionMetrics.start("/upload");
+        ClassificationSnapshot classifications = classificationService.getSnapshot();
+        long generation = classifications.getGeneration();
+        String contentHash;
+        ConversionResultCache.Hit cachedIntermediate = null;
+        ConversionResultCache.Hit cachedFinal = null;
+        List<String[]> classifiedData = null;
+        int dataRows;
+        try {
+            contentHash = resultCache.hash(file);
+            cachedIntermediate = resultCache.get(contentHash, generation, Artifact.INTERMEDIATE);
+            cachedFinal = resultCache.get(contentHash, generation, Artifact.REPORT);
+            
+            if (cachedIntermediate != null && cachedFinal != null) {
+                dataRows = cachedFinal.getDataRows();
+                stats.addBytesIn(file.getSize());
+                stats.addBytesOut(cachedIntermediate.getSize() + cachedFinal.getSize());
+            } else {
+                closeQuietly(cachedIntermediate);
+                closeQuietly(cachedFinal);
+                cachedIntermediate = null;
+                cachedFinal = null;
+                
+                classifiedData = dataProcessingService.processCsvFile(file, classifications, stats);
+                dataRows = classifiedData.size() - 1; // Exclude header
+            }
+        } catch (Exception e) {
+            closeQuietly(cachedIntermediate);
+            closeQuietly(cachedFinal);
+            permit.close();
+            conversionMetrics.record(stats, false);
+            log.error("Error in /upload (zip) endpoint", e);
+            return ResponseEntity.badRequest().build();
+        }
+        
+        String timestamp = getCurrentTimestamp();
+        String intermediateFileName = "intermediate-10-columns-" + timestamp + ".xlsx";
+        String finalFileName = "zonal-interchange-report-" + timestamp + ".xlsx";
+        boolean cacheHit = classifiedData == null;
+        stats.setCacheHit(cacheHit);
+        
+        ConversionResultCache.Hit intermediateHit = cachedIntermediate;
+        ConversionResultCache.Hit finalHit = cachedFinal;
+        List<String[]> rows = classifiedData;
+        StreamingResponseBody body = outputStream -> {
+            try (ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+                zip.putNextEntry(new ZipEntry(intermediateFileName));
+                if (cacheHit) {
+                    try (intermediateHit) {
+                        intermediateHit.transferTo(zip);
+                    }
+                } else {
+                    // POI may close the stream it writes to, so shield the ZIP between entries
+                    ConversionResultCache.CapturingOutputStream capture = resultCache.capture(
+                        CloseShieldOutputStream.wrap(zip), contentHash, generation, Artifact.INTERMEDIATE, dataRows);
+                    try {
+                        excelWriterService.writeIntermediateExcel(rows, capture, stats);
+                        capture.commit();
+                    } finally {
+                        capture.discard();
+                    }
+                }
+                zip.closeEntry();
+                
+                zip.putNextEntry(new ZipEntry(finalFileName));
+                if (cacheHit) {
+                    try (finalHit) {
+                        finalHit.transferTo(zip);
+                    }
+                } else {
+                    ConversionResultCache.CapturingOutputStream capture = resultCache.capture(
+                        CloseShieldOutputStream.wrap(zip), contentHash, generation, Artifact.REPORT, dataRows);
+                    try {
+                        excelWriterService.writeExcelReport(rows, capture, stats);
+                        capture.commit();
+                    } finally {
+                        capture.discard();
+                    }
+                }
+                zip.closeEntry();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Failed to write Excel files: " + e.getMessage(), e);
+            } finally {
+                closeQuietly(intermediateHit);
+                closeQuietly(finalHit);
+            }
+            conversionMetrics.record(stats, true);
+            log.atInfo().setMessage("Dual Excel files streamed as ZIP")
+                .addKeyValue("rows", dataRows)
+                .addKeyValue("cached", cacheHit)
+                .log();
+        };
+        
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=excel-files-" + timestamp + ".zip")
+                .header("X-Data-Rows", String.valueOf(dataRows))
+                .header("X-Intermediate-File-Name", intermediateFileName)
+                .header("X-Final-File-Name", finalFileName)
+                .header("X-Classification-Generation", String.valueOf(generation))
+                .header("X-Cache", cacheHit ? "HIT" : "MISS")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(releasing(permit, stats, body, intermediateHit, finalHit));
+    }
+    
+    /**
+     * Returns the admission budget (and closes the given cache hits) once the streamed response body
+     * has been written or failed - and also when the async request times out or ends before the body runs
+     * (the body may then never be invoked). Releasing twice is safe.
+     * A body that did not record its stats as a success is recorded as an error here.
+     */
+    private StreamingResponseBody releasing(UploadAdmissionService.Permit permit, ConversionStats stats,
+                                            StreamingResponseBody body, ConversionResultCache.Hit... cachedHits) {
+        Runnable release = () -> {
+            permit.close();
+            conversionMetrics.record(stats, false);
+            for (ConversionResultCache.Hit hit : cachedHits) {
+                closeQuietly(hit);
+            }
+        };
+        
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(permit, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                release.run();
+            }
+        });
+        
+        return outputStream -> {
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                release.run();
+            }
+        };
+    }
+    
+    private void closeQuietly(ConversionResultCache.Hit hit) {
+        if (hit == null) {
+            return;
+        }
+        try {
+            hit.close();
+        } catch (IOException e) {
+            log.warn("Could not close cached workbook: {}", e.getMessage());
         }
     }
     
@@ -0,0 +1,121 @@
+package com.company.csvconverter.controller;
+
+import com.company.csvconverter.service.ConversionJob;
+import com.company.csvconverter.service.ConversionJobService;
+import com.company.csvconverter.service.UploadAdmissionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Job-based API for large conversions: submit, poll the status, then download each artifact
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    @Autowired
+    private ConversionJobService jobService;
+
+    @Autowired
+    private UploadAdmissionService uploadAdmission;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submitJob(@RequestParam("file") MultipartFile file) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            ConversionJob job = jobService.submit(file);
+            response.put("jobId", job.getId());
+            response.put("stage", job.getStage());
+            response.put("statusUrl", "/api/jobs/" + job.getId());
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+
+        } catch (RejectedExecutionException e) {
+            response.put("error", true);
+            response.put("message", "Too many conversions in progress, please retry later");
+
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(uploadAdmission.getRetryAfterSeconds()))
+                    .body(response);
+
+        } catch (Exception e) {
+            response.put("error", true);
+            response.put("message", "Failed to queue conversion: " + e.getMessage());
+
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJobStatus(@PathVariable String jobId) {
+        ConversionJob job = jobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", job.getId());
+        response.put("fileName", job.getOriginalFileName());
+        response.put("stage", job.getStage());
+        response.put("rowsProcessed", job.getRowsProcessed());
+        response.put("createdAt", job.getCreatedAt().toString());
+
+        if (job.getFinishedAt() != null) {
+            response.put("finishedAt", job.getFinishedAt().toString());
+        }
+        if (job.getStage() == ConversionJob.Stage.FAILED) {
+            response.put("error", true);
+            response.put("message", job.getErrorMessage());
+        }
+        if (job.getStage() == ConversionJob.Stage.COMPLETED) {
+            response.put("classificationGeneration", job.getClassificationGeneration());
+            response.put("intermediateUrl", "/api/jobs/" + job.getId() + "/intermediate");
+            response.put("finalUrl", "/api/jobs/" + job.getId() + "/final");
+        }
+
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/{jobId}/intermediate")
+    public ResponseEntity<Resource> downloadIntermediate(@PathVariable String jobId) {
+        ConversionJob job = jobService.getJob(jobId);
+        if (job == null || job.getStage() != ConversionJob.Stage.COMPLETED) {
+            return ResponseEntity.notFound().build();
+        }
+        return download(job.getIntermediateFile(), job.getIntermediateFileName());
+    }
+
+    @GetMapping("/{jobId}/final")
+    public ResponseEntity<Resource> downloadFinal(@PathVariable String jobId) {
+        ConversionJob job = jobService.getJob(jobId);
+        if (job == null || job.getStage() != ConversionJob.Stage.COMPLETED) {
+            return ResponseEntity.notFound().build();
+        }
+        return download(job.getFinalFile(), job.getFinalFileName());
+    }
+
+    private ResponseEntity<Resource> download(Path file, String fileName) {
+        FileSystemResource resource = new FileSystemResource(file);
+        if (!resource.exists()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(resource);
+    }
+}
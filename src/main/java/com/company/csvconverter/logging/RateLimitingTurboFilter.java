@@ -0,0 +1,103 @@
+package com.company.csvconverter.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rate-limits repeated log messages: each message pattern may be logged at most
+ * allowedPerInterval times per interval, further events are dropped until the next interval
+ * Unlike logback's DuplicateMessageFilter the budget is refilled over time, so a message
+ * that is logged once per request keeps showing up, only bursts are cut. ERROR is never dropped.
+ */
+public class RateLimitingTurboFilter extends TurboFilter {
+
+    private int allowedPerInterval = 20;
+    private long intervalMillis = 10_000;
+    private int maxTrackedMessages = 1_000;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    // Earliest time of the next scan for idle windows once the map is full
+    private volatile long nextEvictionScan;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (format == null || level == null || level.isGreaterOrEqual(Level.ERROR)) {
+            return FilterReply.NEUTRAL;
+        }
+
+        // Turbo filters run before the level check: disabled events (DEBUG/TRACE of every library)
+        // are left to that check instead of being tracked and counted here
+        if (logger != null && !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+
+        // Only the pattern counts, not the arguments: "Unknown {}" is one message for every type
+        long now = System.currentTimeMillis();
+        Window window = windows.get(format);
+        if (window == null) {
+            if (windows.size() >= maxTrackedMessages && !evictIdleWindows(now)) {
+                // Every tracked message is active: leave new ones unlimited rather than resetting the budgets
+                return FilterReply.NEUTRAL;
+            }
+            window = windows.computeIfAbsent(format, key -> new Window(now));
+        }
+        return window.tryAcquire(now, intervalMillis, allowedPerInterval) ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    /**
+     * Drops the windows whose interval is over (a fresh window would behave the same)
+     * Scans at most once per interval; returns whether there is room for a new message
+     */
+    private boolean evictIdleWindows(long now) {
+        if (now >= nextEvictionScan) {
+            nextEvictionScan = now + intervalMillis;
+            windows.values().removeIf(window -> window.isIdle(now, intervalMillis));
+        }
+        return windows.size() < maxTrackedMessages;
+    }
+
+    public void setAllowedPerInterval(int allowedPerInterval) {
+        this.allowedPerInterval = allowedPerInterval;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void setMaxTrackedMessages(int maxTrackedMessages) {
+        this.maxTrackedMessages = maxTrackedMessages;
+    }
+
+    private static class Window {
+        private volatile long start;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        boolean isIdle(long now, long intervalMillis) {
+            return now - start >= intervalMillis;
+        }
+
+        boolean tryAcquire(long now, long intervalMillis, int allowed) {
+            if (now - start >= intervalMillis) {
+                synchronized (this) {
+                    if (now - start >= intervalMillis) {
+                        start = now;
+                        count.set(0);
+                    }
+                }
+            }
+            return count.incrementAndGet() <= allowed;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.company.csvconverter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Converts a batch of CSV uploads (one per division) in one request, against one classification snapshot
+ * Files are aggregated in parallel on a bounded pool; the reports come out either as one ZIP entry per file
+ * (built in parallel) or as one workbook with a report sheet per file (styles created once for all sheets).
+ * The endpoint has its own multipart limits (see BatchUploadConfig).
+ */
+@Service
+public class BatchConversionService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchConversionService.class);
+
+    @Autowired
+    private DataProcessingService dataProcessingService;
+
+    @Autowired
+    private ExcelWriterService excelWriterService;
+
+    // Files accepted in one batch request
+    @Value("${converter.batch.max-files:24}")
+    private int maxFiles = 24;
+
+    // Files aggregated / reports built at the same time across all batch requests (0 = one per core)
+    @Value("${converter.batch.threads:0}")
+    private int batchThreads = 0;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = batchThreads > 0 ? batchThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "batch-convert-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Parses, classifies and aggregates every file in parallel, returning the results in upload order
+     * Throws IllegalArgumentException for an empty batch or one with more than max-files files
+     */
+    public List<BatchFile> aggregate(List<MultipartFile> files, ClassificationSnapshot classifications,
+                                     ConversionStats stats) throws Exception {
+        if (files.isEmpty() || files.size() > maxFiles) {
+            throw new IllegalArgumentException("A batch holds 1 to " + maxFiles + " files, got " + files.size());
+        }
+
+        List<Callable<StationAggregator>> tasks = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            tasks.add(() -> dataProcessingService.aggregateCsvFile(file, classifications, stats));
+        }
+        List<StationAggregator> aggregators = runAll(tasks);
+
+        List<BatchFile> batch = new ArrayList<>(files.size());
+        Set<String> baseNames = new HashSet<>();
+        Set<String> sheetNames = new HashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            String baseName = uniqueBaseName(files.get(i).getOriginalFilename(), i, baseNames);
+            batch.add(new BatchFile(baseName, uniqueSheetName(baseName, sheetNames), aggregators.get(i)));
+        }
+
+        log.atInfo().setMessage("CSV batch aggregated")
+            .addKeyValue("files", batch.size())
+            .addKeyValue("rows", batch.stream().mapToInt(BatchFile::getDataRows).sum())
+            .log();
+        return batch;
+    }
+
+    /**
+     * Writes a ZIP with one report workbook per file (stream not closed)
+     * The workbooks are built in parallel and each one is written as an entry as soon as it is done
+     * (entries in completion order), so only the reports still being built or written are in memory
+     */
+    public void writeZip(List<BatchFile> batch, OutputStream outputStream, ConversionStats stats) throws Exception {
+        CompletionService<ZipReport> reports = new ExecutorCompletionService<>(executor);
+        List<Future<ZipReport>> futures = new ArrayList<>(batch.size());
+        try {
+            for (BatchFile file : batch) {
+                futures.add(reports.submit(() -> {
+                    ByteArrayOutputStream report = new ByteArrayOutputStream();
+                    excelWriterService.writeExcelReport(file.getAggregator(), report, stats);
+                    return new ZipReport(file.getReportFileName(), report.toByteArray());
+                }));
+            }
+
+            ZipOutputStream zip = new ZipOutputStream(outputStream);
+            for (int i = 0; i < batch.size(); i++) {
+                ZipReport report = reports.take().get();
+                zip.putNextEntry(new ZipEntry(report.fileName));
+                zip.write(report.workbook);
+                zip.closeEntry();
+            }
+            zip.finish();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Writes one workbook with a report sheet per file, in upload order (stream not closed)
+     */
+    public void writeWorkbook(List<BatchFile> batch, OutputStream outputStream, ConversionStats stats) throws Exception {
+        Map<String, StationAggregator> aggregatorsBySheet = new LinkedHashMap<>();
+        for (BatchFile file : batch) {
+            aggregatorsBySheet.put(file.getSheetName(), file.getAggregator());
+        }
+        excelWriterService.writeExcelReports(aggregatorsBySheet, outputStream, stats);
+    }
+
+    /**
+     * Runs the tasks on the batch pool and returns their results in task order
+     * The first failure cancels the remaining tasks and is rethrown
+     */
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws Exception {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * The upload's file name without directory and extension, reduced to safe characters
+     * and made unique within the batch
+     */
+    private static String uniqueBaseName(String originalFilename, int index, Set<String> taken) {
+        String name = originalFilename != null ? originalFilename : "";
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        name = name.replaceAll("[^A-Za-z0-9_.-]", "_");
+        if (name.isEmpty()) {
+            name = "file-" + (index + 1);
+        }
+
+        String unique = name;
+        for (int n = 2; !taken.add(unique.toLowerCase(Locale.ROOT)); n++) {
+            unique = name + "-" + n;
+        }
+        return unique;
+    }
+
+    /**
+     * A valid sheet name (at most 31 characters), unique within the workbook (Excel compares them ignoring case)
+     */
+    private static String uniqueSheetName(String baseName, Set<String> taken) {
+        String name = WorkbookUtil.createSafeSheetName(baseName);
+        String unique = name;
+        for (int n = 2; !taken.add(unique.toLowerCase(Locale.ROOT)); n++) {
+            String suffix = " (" + n + ")";
+            unique = name.substring(0, Math.min(name.length(), 31 - suffix.length())) + suffix;
+        }
+        return unique;
+    }
+
+    /**
+     * A built report waiting to be written as a ZIP entry
+     */
+    private static final class ZipReport {
+
+        private final String fileName;
+        private final byte[] workbook;
+
+        private ZipReport(String fileName, byte[] workbook) {
+            this.fileName = fileName;
+            this.workbook = workbook;
+        }
+    }
+
+    /**
+     * One aggregated file of a batch with the names of its report
+     */
+    public static final class BatchFile {
+
+        private final String baseName;
+        private final String sheetName;
+        private final StationAggregator aggregator;
+
+        private BatchFile(String baseName, String sheetName, StationAggregator aggregator) {
+            this.baseName = baseName;
+            this.sheetName = sheetName;
+            this.aggregator = aggregator;
+        }
+
+        public String getBaseName() {
+            return baseName;
+        }
+
+        public String getSheetName() {
+            return sheetName;
+        }
+
+        public String getReportFileName() {
+            return "zonal-interchange-report-" + baseName + ".xlsx";
+        }
+
+        public StationAggregator getAggregator() {
+            return aggregator;
+        }
+
+        public int getDataRows() {
+            return aggregator.getRowCount();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.company.csvconverter.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes byte ranges of a CSV buffer to Strings, returning the same instance for repeated values
+ * Station codes, zones, L/E flags and wagon types repeat on almost every row, so after the first few
+ * rows a field costs a hash over its bytes and no allocation. Long or too many distinct values
+ * (free text) are decoded without being cached, which bounds the cache size.
+ */
+final class ByteStringCache {
+
+    private static final int MAX_CACHED_LENGTH = 64;
+    private static final int MAX_ENTRIES = 4096;
+
+    private final Charset charset;
+
+    // Open addressing: slot -> (hash, bytes, value)
+    private int[] hashes = new int[256];
+    private byte[][] keys = new byte[256][];
+    private String[] values = new String[256];
+    private int size = 0;
+
+    ByteStringCache(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * The decoded value of data[start, end)
+     */
+    String get(ByteBuffer data, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return "";
+        }
+        if (length > MAX_CACHED_LENGTH) {
+            return decode(data, start, end);
+        }
+
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + data.get(i);
+        }
+
+        int mask = keys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && matches(keys[slot], data, start, length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String value = decode(data, start, end);
+        if (size >= MAX_ENTRIES) {
+            return value;
+        }
+
+        byte[] key = new byte[length];
+        data.get(start, key);
+        hashes[slot] = hash;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes data[start, end) without caching
+     */
+    String decode(ByteBuffer data, int start, int end) {
+        if (data.hasArray()) {
+            return new String(data.array(), data.arrayOffset() + start, end - start, charset);
+        }
+        byte[] bytes = new byte[end - start];
+        data.get(start, bytes);
+        return new String(bytes, charset);
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer data, int start, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != data.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldHashes = hashes;
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        hashes = new int[capacity];
+        keys = new byte[capacity][];
+        values = new String[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) {
+                continue;
+            }
+            int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = oldHashes[i];
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
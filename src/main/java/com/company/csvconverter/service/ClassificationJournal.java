@@ -0,0 +1,314 @@
+package com.company.csvconverter.service;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvMalformedLineException;
+import com.opencsv.exceptions.CsvValidationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only journal of classification changes (one "WAGON_TYPE","CATEGORY" line per entry)
+ * Saves append only their own entries; the sorted CSV is rewritten only on compaction.
+ * fsync is batched: one force() covers every entry appended before it (group commit).
+ */
+class ClassificationJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ClassificationJournal.class);
+
+    private final Path journalPath;
+    private final boolean fsync;
+    private final FileChannel channel;
+
+    // Guards appends / truncation (position bookkeeping)
+    // Locks rather than synchronized: file I/O under a monitor would pin a virtual thread to its carrier
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    // Guards force(); callers whose entries are already covered skip it
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private volatile long writtenPosition;
+    private volatile long syncedPosition;
+    private int entryCount;
+    private int syncedEntryCount;
+
+    // Set when a force() fails: nothing written after the last successful force() counts as durable
+    // (a retried fsync can report success for pages the kernel already dropped) until discardUnsynced()
+    private volatile boolean syncFailed;
+
+    ClassificationJournal(Path journalPath, boolean fsync) throws IOException {
+        this.journalPath = journalPath;
+        this.fsync = fsync;
+        Files.createDirectories(journalPath.getParent());
+        this.channel = FileChannel.open(journalPath,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writtenPosition = channel.size();
+        this.syncedPosition = writtenPosition;
+        channel.position(writtenPosition);
+    }
+
+    /**
+     * Replays the journal tail on top of the given classifications
+     * Entries are read with CSVReader, so quoted values spanning lines replay intact.
+     * A torn tail (crash during append: a partial last line or an unterminated quoted record)
+     * is cut off so new entries start on a clean record boundary
+     * Returns the number of entries replayed
+     */
+    int replayInto(Map<String, String> classifications) throws IOException {
+        appendLock.lock();
+        try {
+            byte[] content = Files.readAllBytes(journalPath);
+
+            int end = content.length;
+            while (end > 0 && content[end - 1] != '\n') {
+                end--;
+            }
+
+            Map<String, String> replayedEntries = new LinkedHashMap<>();
+            int replayed = 0;
+            try (CSVReader reader = new CSVReader(new InputStreamReader(
+                    new ByteArrayInputStream(content, 0, end), StandardCharsets.UTF_8))) {
+                long goodLines = 0;
+                try {
+                    String[] entry;
+                    while ((entry = reader.readNext()) != null) {
+                        goodLines = reader.getLinesRead();
+                        if (entry.length >= 2 && !entry[0].trim().isEmpty()) {
+                            replayedEntries.put(entry[0].trim().toUpperCase(), entry[1].trim().toUpperCase());
+                            replayed++;
+                        }
+                    }
+                } catch (CsvMalformedLineException e) {
+                    // Only the last record can be unterminated: everything after its opening quote was read into it
+                    end = lineEndOffset(content, goodLines);
+                }
+            } catch (CsvValidationException e) {
+                throw new IOException("Unreadable classification journal " + journalPath, e);
+            }
+
+            if (end < content.length) {
+                log.warn("Discarding {} bytes of a torn journal entry", content.length - end);
+                channel.truncate(end);
+            }
+            classifications.putAll(replayedEntries);
+
+            writtenPosition = end;
+            syncedPosition = end;
+            channel.position(end);
+            entryCount = replayed;
+            syncedEntryCount = replayed;
+            return replayed;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Byte offset just after the given number of lines (line ends as counted by CSVReader: LF, CR or CRLF)
+     */
+    private static int lineEndOffset(byte[] content, long lines) {
+        int offset = 0;
+        for (long line = 0; line < lines && offset < content.length; line++) {
+            while (offset < content.length && content[offset] != '\n' && content[offset] != '\r') {
+                offset++;
+            }
+            if (offset < content.length && content[offset] == '\r') {
+                offset++;
+            }
+            if (offset < content.length && content[offset] == '\n') {
+                offset++;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Appends entries and returns the journal position that must be synced for them to be durable
+     */
+    long append(List<String[]> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return writtenPosition;
+        }
+
+        StringWriter lines = new StringWriter();
+        try (CSVWriter writer = new CSVWriter(lines)) {
+            writer.writeAll(entries);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        appendLock.lock();
+        try {
+            long startPosition = writtenPosition;
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                // Never leave a partial entry in front of later appends
+                rollback(startPosition, 0);
+                throw e;
+            }
+            writtenPosition = channel.position();
+            entryCount += entries.size();
+            return writtenPosition;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Cuts the journal back to an earlier length, dropping the given number of entries written after it
+     */
+    private void rollback(long position, int entries) throws IOException {
+        appendLock.lock();
+        try {
+            channel.truncate(position);
+            channel.position(position);
+            entryCount = Math.max(0, entryCount - entries);
+            writtenPosition = position;
+            syncedPosition = Math.min(syncedPosition, position);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Makes everything up to the given position durable
+     * Concurrent callers share a single force(): whoever syncs covers all entries written so far.
+     * After a failed force() every call fails until discardUnsynced() has cut the journal back.
+     */
+    void sync(long position) throws IOException {
+        if (!fsync || syncedPosition >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (syncedPosition >= position) {
+                return;
+            }
+            if (syncFailed) {
+                throw new IOException("Classification journal " + journalPath + " failed to sync earlier");
+            }
+
+            long target;
+            int targetEntries;
+            appendLock.lock();
+            try {
+                target = writtenPosition;
+                targetEntries = entryCount;
+            } finally {
+                appendLock.unlock();
+            }
+
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                syncFailed = true;
+                throw e;
+            }
+            syncedPosition = target;
+            syncedEntryCount = targetEntries;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * After a failed sync: cuts the journal back to the end of the last successful force()
+     * Returns false (and changes nothing) if no sync has failed since the last call
+     */
+    boolean discardUnsynced() throws IOException {
+        syncLock.lock();
+        try {
+            if (!syncFailed) {
+                return false;
+            }
+            appendLock.lock();
+            try {
+                log.warn("Discarding {} unsynced journal bytes after a failed sync", writtenPosition - syncedPosition);
+                channel.truncate(syncedPosition);
+                channel.position(syncedPosition);
+                writtenPosition = syncedPosition;
+                entryCount = syncedEntryCount;
+                syncFailed = false;
+                return true;
+            } finally {
+                appendLock.unlock();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Drops all entries after they have been compacted into the classification file
+     */
+    void truncate() throws IOException {
+        // Also held against sync(): a force() still running for a discarded save must not
+        // publish its pre-truncation position afterwards
+        syncLock.lock();
+        try {
+            appendLock.lock();
+            try {
+                channel.truncate(0);
+                channel.position(0);
+                if (fsync) {
+                    channel.force(true);
+                }
+                writtenPosition = 0;
+                syncedPosition = 0;
+                entryCount = 0;
+                syncedEntryCount = 0;
+                syncFailed = false;
+            } finally {
+                appendLock.unlock();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Number of entries not yet compacted
+     */
+    int getEntryCount() {
+        appendLock.lock();
+        try {
+            return entryCount;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Length of the journal covered by the last successful force()
+     */
+    long getSyncedPosition() {
+        return syncedPosition;
+    }
+
+    Path getPath() {
+        return journalPath;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync(writtenPosition);
+        channel.close();
+    }
+}
@@ -3,83 +3,338 @@ package com.company.csvconverter.service;
 import com.company.csvconverter.controller.ClassificationController.ClassificationRequest;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class ClassificationService {
     
+    private static final Logger log = LoggerFactory.getLogger(ClassificationService.class);
+    
     private static final String CLASSIFICATION_FILE = "wagon_classifications.csv";
-    private static final String CLASSIFICATION_DIR = "data";
+    private static final String JOURNAL_FILE = "wagon_classifications.journal";
     
-    // Cache for classifications
-    private Map<String, String> classificationCache = new HashMap<>();
-    private boolean cacheLoaded = false;
+    // Current immutable snapshot: readers never lock or reload, saves swap in a new one
+    private final AtomicReference<ClassificationSnapshot> snapshot = new AtomicReference<>();
     
-    public int saveNewClassifications(List<ClassificationRequest> newClassifications) throws Exception {
-        // Load existing classifications
-        Map<String, String> existingClassifications = loadClassificationsFromFile();
-        
-        int savedCount = 0;
-        List<String[]> allClassifications = new ArrayList<>();
+    // Serializes reserving saves (duplicate check, generation, journal append) and compaction;
+    // not held across the journal fsync, so concurrent saves share one force()
+    private final ReentrantLock saveLock = new ReentrantLock();
+    
+    // Guards the saves in flight and installs their snapshots in generation order
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final Condition publishTurn = publishLock.newCondition();
+    
+    // Saves appended to the journal but not yet published, by generation (guarded by publishLock)
+    private final NavigableMap<Long, PendingSave> pendingSaves = new TreeMap<>();
+    
+    // Newest reserved dictionary, including saves still in flight (guarded by saveLock)
+    private ClassificationSnapshot latest;
+    private long lastGeneration;
+    
+    // Runs threshold compactions off the request thread; at most one is queued at a time
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "classification-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    
+    // Append-only journal of saved classifications, compacted into the CSV file
+    private ClassificationJournal journal;
+    
+    // Notifies listeners (e.g. the result cache) when a new generation is published
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    // Directory of the compacted CSV and the journal
+    @Value("${converter.classifications.dir:data}")
+    private String classificationDir = "data";
+    
+    // fsync the journal before a save publishes its snapshot and returns
+    @Value("${converter.classifications.journal.fsync:true}")
+    private boolean journalFsync = true;
+    
+    // Compact the journal into the sorted CSV once it holds this many entries
+    @Value("${converter.classifications.compact-threshold:200}")
+    private int compactThreshold = 200;
+    
+    /**
+     * Loads the classifications once at startup (defaults + compacted CSV + journal tail)
+     * and publishes the first snapshot
+     */
+    @PostConstruct
+    public void init() throws Exception {
+        journal = new ClassificationJournal(getJournalFilePath(), journalFsync);
         
-        // Add existing classifications to list
-        for (Map.Entry<String, String> entry : existingClassifications.entrySet()) {
-            allClassifications.add(new String[]{entry.getKey(), entry.getValue()});
+        Map<String, String> classifications;
+        try {
+            classifications = loadClassificationsFromFile();
+            int replayed = journal.replayInto(classifications);
+            log.info("Replayed {} journal entries, {} wagon classifications in total", replayed, classifications.size());
+        } catch (Exception e) {
+            // Never run on a defaults-only snapshot: the next save or compaction would overwrite the saved file
+            throw new IllegalStateException("Could not load saved classifications from " + getClassificationFilePath()
+                + " and " + getJournalFilePath(), e);
         }
+        latest = ClassificationSnapshot.adopt(classifications, 1);
+        lastGeneration = 1;
+        snapshot.set(latest);
+    }
+    
+    /**
+     * Flushes and closes the journal on shutdown (after a running compaction has finished)
+     */
+    @PreDestroy
+    public void shutdown() throws Exception {
+        compactionExecutor.shutdown();
+        compactionExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        journal.close();
+    }
+    
+    /**
+     * Saves new classifications by appending them to the journal
+     * The cost depends on the number of wagon types in the request, not on the size of the dictionary file
+     * The entries are synced outside the save lock (concurrent saves share one fsync) and the new snapshots
+     * are published in generation order once durable; if the append or sync fails nothing is published
+     */
+    public int saveNewClassifications(List<ClassificationRequest> newClassifications) throws Exception {
+        PendingSave save;
+        int savedCount;
         
-        // Process new classifications
-        for (ClassificationRequest request : newClassifications) {
-            String category = request.getCategory().toUpperCase();
+        saveLock.lock();
+        try {
+            Map<String, String> existingClassifications = latest.asMap();
+            Map<String, String> addedClassifications = new LinkedHashMap<>();
             
-            for (String wagonType : request.getWagonTypes()) {
-                String cleanWagonType = wagonType.trim().toUpperCase();
+            // Process new classifications
+            for (ClassificationRequest request : newClassifications) {
+                String category = requireNoControlCharacters(request.getCategory()).toUpperCase();
                 
-                // Check if this wagon type already exists
-                if (!existingClassifications.containsKey(cleanWagonType)) {
-                    allClassifications.add(new String[]{cleanWagonType, category});
-                    savedCount++;
-                    System.out.println("Added new classification: " + cleanWagonType + " -> " + category);
-                } else {
-                    System.out.println("Classification already exists: " + cleanWagonType + " -> " + existingClassifications.get(cleanWagonType));
+                for (String wagonType : request.getWagonTypes()) {
+                    String cleanWagonType = requireNoControlCharacters(wagonType).trim().toUpperCase();
+                    
+                    // Check if this wagon type already exists
+                    if (!existingClassifications.containsKey(cleanWagonType) && !addedClassifications.containsKey(cleanWagonType)) {
+                        addedClassifications.put(cleanWagonType, category);
+                        log.info("Added new classification: {} -> {}", cleanWagonType, category);
+                    } else {
+                        log.info("Classification already exists: {} -> {}", cleanWagonType,
+                            existingClassifications.getOrDefault(cleanWagonType, addedClassifications.get(cleanWagonType)));
+                    }
                 }
             }
+            
+            savedCount = addedClassifications.size();
+            if (savedCount == 0) {
+                return 0;
+            }
+            
+            // Append only the new entries and reserve the next generation; later saves build on this one
+            long journalPosition = journal.append(convertMapToList(addedClassifications));
+            Map<String, String> updatedClassifications = new HashMap<>(existingClassifications);
+            updatedClassifications.putAll(addedClassifications);
+            latest = ClassificationSnapshot.adopt(updatedClassifications, ++lastGeneration);
+            save = new PendingSave(latest, journalPosition);
+            
+            publishLock.lock();
+            try {
+                pendingSaves.put(latest.getGeneration(), save);
+            } finally {
+                publishLock.unlock();
+            }
+        } finally {
+            saveLock.unlock();
+        }
+        
+        // Make the entries durable before anyone can see them
+        IOException syncFailure = null;
+        try {
+            journal.sync(save.journalPosition);
+        } catch (IOException e) {
+            syncFailure = e;
+            discardUnsyncedSaves();
         }
         
-        // Save all classifications back to file
-        saveClassificationsToFile(allClassifications);
+        if (!publishInOrder(save)) {
+            throw new IOException("Classification journal could not be synced, the save was discarded", syncFailure);
+        }
+        eventPublisher.publishEvent(new ClassificationsChangedEvent(this, save.snapshot.getGeneration()));
         
-        // Clear cache to force reload
-        cacheLoaded = false;
-        classificationCache.clear();
+        // The save is committed: compaction runs in the background and its failures never reach the caller
+        if (journal.getEntryCount() >= compactThreshold && compactionQueued.compareAndSet(false, true)) {
+            try {
+                compactionExecutor.execute(() -> {
+                    compactionQueued.set(false);
+                    compactQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the next start replays the journal
+                compactionQueued.set(false);
+            }
+        }
         
         return savedCount;
     }
     
-    public Map<String, String> getAllClassifications() throws Exception {
-        if (!cacheLoaded) {
-            classificationCache = loadClassificationsFromFile();
-            cacheLoaded = true;
+    /**
+     * Installs a durable save's snapshot once every earlier generation is installed or discarded
+     * Returns false if the save was discarded after a failed sync
+     */
+    private boolean publishInOrder(PendingSave save) {
+        long generation = save.snapshot.getGeneration();
+        publishLock.lock();
+        try {
+            while (!save.discarded && pendingSaves.firstKey() != generation) {
+                publishTurn.awaitUninterruptibly();
+            }
+            if (save.discarded) {
+                return false;
+            }
+            snapshot.set(save.snapshot);
+            pendingSaves.remove(generation);
+            publishTurn.signalAll();
+            return true;
+        } finally {
+            publishLock.unlock();
         }
-        return new HashMap<>(classificationCache);
     }
     
-    public String getClassification(String wagonType) {
+    /**
+     * After a failed sync: cuts the journal back to the last durable entry and discards every save
+     * in flight beyond it; new saves continue from the newest save that is still durable
+     */
+    private void discardUnsyncedSaves() {
+        saveLock.lock();
         try {
-            if (!cacheLoaded) {
-                classificationCache = loadClassificationsFromFile();
-                cacheLoaded = true;
+            try {
+                if (!journal.discardUnsynced()) {
+                    // Another save already discarded the failed tail
+                    return;
+                }
+            } catch (IOException e) {
+                // The journal stays failed (every later sync fails) until the next restart replays it
+                log.error("Could not cut the classification journal back after a failed sync", e);
+            }
+            
+            long durablePosition = journal.getSyncedPosition();
+            publishLock.lock();
+            try {
+                Iterator<PendingSave> saves = pendingSaves.values().iterator();
+                while (saves.hasNext()) {
+                    PendingSave pending = saves.next();
+                    if (pending.journalPosition > durablePosition) {
+                        pending.discarded = true;
+                        saves.remove();
+                    }
+                }
+                latest = pendingSaves.isEmpty() ? snapshot.get() : pendingSaves.lastEntry().getValue().snapshot;
+                publishTurn.signalAll();
+            } finally {
+                publishLock.unlock();
             }
-            return classificationCache.get(wagonType.trim().toUpperCase());
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    /**
+     * Periodic compaction (failures are logged and retried on the next run)
+     */
+    @Scheduled(fixedDelayString = "${converter.classifications.compact-interval-ms:600000}")
+    public void scheduledCompaction() {
+        compactQuietly();
+    }
+    
+    private void compactQuietly() {
+        try {
+            compactJournal();
         } catch (Exception e) {
-            System.err.println("Error getting classification for " + wagonType + ": " + e.getMessage());
-            return null;
+            // The journal still holds every entry, so nothing is lost; the next run compacts again
+            log.error("Could not compact the classification journal into {}", getClassificationFilePath(), e);
+        }
+    }
+    
+    /**
+     * Rewrites the sorted CSV from the current snapshot and empties the journal
+     */
+    public void compactJournal() throws Exception {
+        saveLock.lock();
+        try {
+            if (journal.getEntryCount() == 0 || hasPendingSaves()) {
+                // Saves in flight are not in the published snapshot yet; the next save or run compacts
+                return;
+            }
+            
+            saveClassificationsToFile(convertMapToList(snapshot.get().asMap()));
+            journal.truncate();
+            log.info("Compacted classification journal into {}", getClassificationFilePath());
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    private boolean hasPendingSaves() {
+        publishLock.lock();
+        try {
+            return !pendingSaves.isEmpty();
+        } finally {
+            publishLock.unlock();
+        }
+    }
+    
+    /**
+     * Rejects values with control characters (line breaks would split journal and CSV records)
+     */
+    private static String requireNoControlCharacters(String value) {
+        if (value == null || value.chars().anyMatch(Character::isISOControl)) {
+            throw new IllegalArgumentException("Wagon types and categories must not contain control characters");
         }
+        return value;
+    }
+    
+    public Map<String, String> getAllClassifications() throws Exception {
+        return new HashMap<>(snapshot.get().asMap());
+    }
+    
+    public String getClassification(String wagonType) {
+        return snapshot.get().getClassification(wagonType);
+    }
+    
+    /**
+     * Current snapshot - classify a whole file with one snapshot to get consistent results
+     */
+    public ClassificationSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+    
+    /**
+     * Generation of the current snapshot (increases with every save)
+     */
+    public long getGeneration() {
+        return snapshot.get().getGeneration();
     }
     
     private Map<String, String> loadClassificationsFromFile() throws Exception {
@@ -101,16 +356,13 @@ public class ClassificationService {
                     }
                 }
             }
-        } else {
-            // Create file with default classifications
-            saveClassificationsToFile(convertMapToList(classifications));
         }
         
-        System.out.println("Loaded " + classifications.size() + " wagon classifications");
+        log.info("Loaded {} wagon classifications", classifications.size());
         return classifications;
     }
     
-    private void loadDefaultClassifications(Map<String, String> classifications) {
+    static void loadDefaultClassifications(Map<String, String> classifications) {
         // JUMBO category
         String[] jumbo = {"BCN", "BCNAHSM1", "BCNAHSM2", "BCNHL", "BCNM"};
         for (String type : jumbo) {
@@ -159,11 +411,14 @@ public class ClassificationService {
     
     private void saveClassificationsToFile(List<String[]> classifications) throws Exception {
         Path filePath = getClassificationFilePath();
+        Path tempPath = filePath.resolveSibling(CLASSIFICATION_FILE + ".tmp");
         
         // Create directory if it doesn't exist
         Files.createDirectories(filePath.getParent());
         
-        try (CSVWriter writer = new CSVWriter(new FileWriter(filePath.toFile()))) {
+        // Write to a temp file and move it into place, so a crash never leaves a half-written file
+        try (FileOutputStream output = new FileOutputStream(tempPath.toFile());
+             CSVWriter writer = new CSVWriter(new OutputStreamWriter(output))) {
             // Write header
             writer.writeNext(new String[]{"WAGON_TYPE", "CATEGORY"});
             
@@ -172,9 +427,12 @@ public class ClassificationService {
             
             // Write all classifications
             writer.writeAll(classifications);
+            writer.flush();
+            output.getFD().sync();
         }
+        Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         
-        System.out.println("Saved " + classifications.size() + " classifications to " + filePath);
+        log.info("Saved {} classifications to {}", classifications.size(), filePath);
     }
     
     private List<String[]> convertMapToList(Map<String, String> map) {
@@ -186,6 +444,27 @@ public class ClassificationService {
     }
     
     private Path getClassificationFilePath() {
-        return Paths.get(CLASSIFICATION_DIR, CLASSIFICATION_FILE);
+        return Paths.get(classificationDir, CLASSIFICATION_FILE);
+    }
+    
+    private Path getJournalFilePath() {
+        return Paths.get(classificationDir, JOURNAL_FILE);
+    }
+    
+    /**
+     * A save appended to the journal, waiting to be synced and published
+     */
+    private static final class PendingSave {
+        
+        final ClassificationSnapshot snapshot;
+        final long journalPosition;
+        
+        // Set under publishLock when a failed sync discarded the entries
+        boolean discarded;
+        
+        PendingSave(ClassificationSnapshot snapshot, long journalPosition) {
+            this.snapshot = snapshot;
+            this.journalPosition = journalPosition;
+        }
     }
 }
@@ -0,0 +1,58 @@
+package com.company.csvconverter.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of the wagon type -> category dictionary
+ * A new snapshot (with the next generation number) is published on every save,
+ * so a file classified with one snapshot is classified consistently
+ */
+public final class ClassificationSnapshot {
+    
+    private final Map<String, String> classifications;
+    private final long generation;
+    
+    /**
+     * Snapshot of a copy of the given map (the caller may keep changing its map)
+     */
+    ClassificationSnapshot(Map<String, String> classifications, long generation) {
+        this(generation, new HashMap<>(classifications));
+    }
+    
+    private ClassificationSnapshot(long generation, Map<String, String> ownedClassifications) {
+        this.classifications = Collections.unmodifiableMap(ownedClassifications);
+        this.generation = generation;
+    }
+    
+    /**
+     * Snapshot that takes ownership of a freshly built map instead of copying it
+     * The caller must not change or hand out the map afterwards
+     */
+    static ClassificationSnapshot adopt(Map<String, String> classifications, long generation) {
+        return new ClassificationSnapshot(generation, classifications);
+    }
+    
+    /**
+     * Returns the category for a wagon type, or null if it is not classified
+     */
+    public String getClassification(String wagonType) {
+        return classifications.get(wagonType.trim().toUpperCase());
+    }
+    
+    /**
+     * Version of the dictionary this snapshot was built from (increases with every save)
+     */
+    public long getGeneration() {
+        return generation;
+    }
+    
+    public int size() {
+        return classifications.size();
+    }
+    
+    Map<String, String> asMap() {
+        return classifications;
+    }
+}
@@ -0,0 +1,25 @@
+package com.company.csvconverter.service;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published after new classifications are saved and a new snapshot generation is live
+ */
+public class ClassificationsChangedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long generation;
+
+    public ClassificationsChangedEvent(Object source, long generation) {
+        super(source);
+        this.generation = generation;
+    }
+
+    /**
+     * Generation of the snapshot that contains the saved classifications
+     */
+    public long getGeneration() {
+        return generation;
+    }
+}
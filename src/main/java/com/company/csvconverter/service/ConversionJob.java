@@ -0,0 +1,92 @@
+package com.company.csvconverter.service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of one asynchronous conversion (upload -> intermediate + final Excel)
+ * Updated by the worker thread, read by the status / download endpoints
+ */
+public class ConversionJob {
+    
+    /**
+     * Pipeline stages reported by the status endpoint
+     */
+    public enum Stage {
+        QUEUED,
+        PARSING,
+        WRITING_INTERMEDIATE,
+        WRITING_REPORT,
+        COMPLETED,
+        FAILED
+    }
+    
+    private final String id;
+    private final String originalFileName;
+    private final Instant createdAt = Instant.now();
+    private final AtomicInteger rowsProcessed = new AtomicInteger();
+    
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile Instant finishedAt;
+    private volatile String errorMessage;
+    private volatile long classificationGeneration;
+    
+    // Generated artifacts (temp files, deleted when the job expires)
+    private volatile Path intermediateFile;
+    private volatile Path finalFile;
+    private volatile String intermediateFileName;
+    private volatile String finalFileName;
+    
+    ConversionJob(String id, String originalFileName) {
+        this.id = id;
+        this.originalFileName = originalFileName;
+    }
+    
+    void moveTo(Stage stage) {
+        this.stage = stage;
+        if (stage == Stage.COMPLETED || stage == Stage.FAILED) {
+            finishedAt = Instant.now();
+        }
+    }
+    
+    void rowProcessed() {
+        rowsProcessed.incrementAndGet();
+    }
+    
+    void fail(String errorMessage) {
+        this.errorMessage = errorMessage;
+        moveTo(Stage.FAILED);
+    }
+    
+    void setClassificationGeneration(long classificationGeneration) {
+        this.classificationGeneration = classificationGeneration;
+    }
+    
+    void setIntermediateArtifact(Path file, String fileName) {
+        this.intermediateFile = file;
+        this.intermediateFileName = fileName;
+    }
+    
+    void setFinalArtifact(Path file, String fileName) {
+        this.finalFile = file;
+        this.finalFileName = fileName;
+    }
+    
+    public String getId() { return id; }
+    public String getOriginalFileName() { return originalFileName; }
+    public Instant getCreatedAt() { return createdAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+    public Stage getStage() { return stage; }
+    public int getRowsProcessed() { return rowsProcessed.get(); }
+    public String getErrorMessage() { return errorMessage; }
+    public long getClassificationGeneration() { return classificationGeneration; }
+    public Path getIntermediateFile() { return intermediateFile; }
+    public Path getFinalFile() { return finalFile; }
+    public String getIntermediateFileName() { return intermediateFileName; }
+    public String getFinalFileName() { return finalFileName; }
+    
+    public boolean isFinished() {
+        return stage == Stage.COMPLETED || stage == Stage.FAILED;
+    }
+}
@@ -0,0 +1,267 @@
+package com.company.csvconverter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs large conversions off the servlet request thread
+ * Jobs go through a bounded executor (max concurrency + max queue depth);
+ * when both are full new jobs are rejected instead of piling up on the node
+ */
+@Service
+public class ConversionJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversionJobService.class);
+
+    @Autowired
+    private DataProcessingService dataProcessingService;
+
+    @Autowired
+    private ExcelWriterService excelWriterService;
+
+    @Autowired
+    private ClassificationService classificationService;
+    
+    @Autowired
+    private ConversionMetrics conversionMetrics;
+
+    @Autowired
+    private Environment environment;
+
+    // Number of conversions running at the same time
+    @Value("${converter.jobs.max-concurrency:2}")
+    private int maxConcurrency = 2;
+
+    // Number of accepted jobs waiting for a worker
+    @Value("${converter.jobs.max-queue-depth:10}")
+    private int maxQueueDepth = 10;
+
+    // Finished jobs (and their files) are kept this long for download
+    @Value("${converter.jobs.retention-minutes:30}")
+    private long retentionMinutes = 30;
+
+    // Directory for spooled uploads and generated workbooks
+    @Value("${converter.jobs.work-dir:${java.io.tmpdir}/csv-converter-jobs}")
+    private String workDir;
+
+    private final Map<String, ConversionJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+    private Path workPath;
+
+    // One permit per job that may be running or queued; taken before the upload is moved to disk
+    private Semaphore jobSlots;
+
+    @PostConstruct
+    public void init() throws Exception {
+        // Absolute, so transferTo() hands the container a path it can rename the spooled part to
+        workPath = Paths.get(workDir).toAbsolutePath();
+        Files.createDirectories(workPath);
+
+        // Jobs are kept in memory only, so uploads and workbooks left by a previous run are unreachable
+        try (DirectoryStream<Path> staleFiles = Files.newDirectoryStream(workPath, "*.{csv,xlsx}")) {
+            for (Path staleFile : staleFiles) {
+                Files.deleteIfExists(staleFile);
+            }
+        }
+
+        // With spring.threads.virtual.enabled on Java 21+ jobs run on virtual threads, so a job blocked
+        // on file I/O does not hold a platform thread (concurrency and queue limits stay the same)
+        ThreadFactory threadFactory;
+        if (Threading.VIRTUAL.isActive(environment)) {
+            threadFactory = new VirtualThreadTaskExecutor("conversion-job-").getVirtualThreadFactory();
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "conversion-job-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        jobSlots = new Semaphore(maxConcurrency + maxQueueDepth);
+        executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxQueueDepth), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Queued jobs never run, so their finally never deletes the spooled upload
+        for (Runnable queued : executor.shutdownNow()) {
+            if (queued instanceof QueuedJob queuedJob) {
+                deleteQuietly(queuedJob.upload);
+            }
+        }
+    }
+
+    /**
+     * Spools the upload to disk and queues the conversion
+     * Throws RejectedExecutionException when the queue is full (checked before the upload is moved)
+     */
+    public ConversionJob submit(MultipartFile file) throws Exception {
+        if (!jobSlots.tryAcquire()) {
+            throw new RejectedExecutionException("Conversion job queue is full");
+        }
+
+        String jobId = UUID.randomUUID().toString();
+        ConversionJob job = new ConversionJob(jobId, file.getOriginalFilename());
+        Path upload = workPath.resolve(jobId + ".csv");
+        boolean queued = false;
+        try {
+            // The multipart temp file is gone once the request ends, so keep it: transferTo(File) with an
+            // absolute path lets Tomcat rename a part it already spooled to disk (transferTo(Path) copies it)
+            file.transferTo(upload.toFile());
+
+            jobs.put(jobId, job);
+            executor.execute(new QueuedJob(job, upload));
+            queued = true;
+        } finally {
+            if (!queued) {
+                jobs.remove(jobId);
+                Files.deleteIfExists(upload);
+                jobSlots.release();
+            }
+        }
+
+        log.atInfo().setMessage("Queued conversion job")
+            .addKeyValue("jobId", jobId)
+            .addKeyValue("waiting", executor.getQueue().size())
+            .log();
+        return job;
+    }
+
+    public ConversionJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Runs the existing DataProcessingService / ExcelWriterService pipeline for one job
+     */
+    private void run(ConversionJob job, Path upload) {
+        // Deleted again if the job fails, before or after the job records them
+        Path intermediateFile = workPath.resolve(job.getId() + "-intermediate.xlsx");
+        Path finalFile = workPath.resolve(job.getId() + "-report.xlsx");
+        ConversionStats stats = conversionMetrics.start("/api/jobs");
+        try {
+            job.moveTo(ConversionJob.Stage.PARSING);
+            stats.addBytesIn(Files.size(upload));
+            ClassificationSnapshot classifications = classificationService.getSnapshot();
+            job.setClassificationGeneration(classifications.getGeneration());
+
+            // The spooled upload is memory-mapped and scanned in place
+            List<String[]> classifiedData = dataProcessingService.processCsv(upload, classifications, row -> job.rowProcessed(), stats);
+
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss"));
+
+            job.moveTo(ConversionJob.Stage.WRITING_INTERMEDIATE);
+            try (OutputStream outputStream = Files.newOutputStream(intermediateFile)) {
+                excelWriterService.writeIntermediateExcel(classifiedData, outputStream, stats);
+            }
+            job.setIntermediateArtifact(intermediateFile, "intermediate-10-columns-" + timestamp + ".xlsx");
+
+            job.moveTo(ConversionJob.Stage.WRITING_REPORT);
+            try (OutputStream outputStream = Files.newOutputStream(finalFile)) {
+                excelWriterService.writeExcelReport(classifiedData, outputStream, stats);
+            }
+            job.setFinalArtifact(finalFile, "zonal-interchange-report-" + timestamp + ".xlsx");
+
+            job.moveTo(ConversionJob.Stage.COMPLETED);
+            conversionMetrics.record(stats, true);
+            log.atInfo().setMessage("Conversion job completed")
+                .addKeyValue("jobId", job.getId())
+                .addKeyValue("rows", job.getRowsProcessed())
+                .log();
+        } catch (Exception e) {
+            log.atError().setMessage("Conversion job failed")
+                .addKeyValue("jobId", job.getId())
+                .setCause(e)
+                .log();
+            deleteQuietly(intermediateFile);
+            deleteQuietly(finalFile);
+            conversionMetrics.record(stats, false);
+            job.fail(e.getMessage());
+        } finally {
+            deleteQuietly(upload);
+        }
+    }
+
+    /**
+     * Removes finished jobs (and their files) after the retention period
+     */
+    @Scheduled(fixedDelayString = "${converter.jobs.cleanup-interval-ms:60000}")
+    public void removeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        jobs.values().removeIf(job -> {
+            if (job.isFinished() && job.getFinishedAt().isBefore(cutoff)) {
+                deleteQuietly(job.getIntermediateFile());
+                deleteQuietly(job.getFinalFile());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (Exception e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * A queued job; keeps the spooled upload so shutdown can delete it if the job never runs
+     */
+    private final class QueuedJob implements Runnable {
+
+        private final ConversionJob job;
+        private final Path upload;
+
+        QueuedJob(ConversionJob job, Path upload) {
+            this.job = job;
+            this.upload = upload;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ConversionJobService.this.run(job, upload);
+            } finally {
+                jobSlots.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.company.csvconverter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes per-request ConversionStats as Micrometer meters (scraped via /actuator/prometheus)
+ * Every meter is tagged with the endpoint (/convert, /upload, /api/jobs) and the outcome (success, error),
+ * so failed conversions show up in the same timers as the ones that completed
+ */
+@Service
+public class ConversionMetrics {
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private MeterRegistry registry;
+
+    @PostConstruct
+    public void init() {
+        // Outside Spring Boot (benchmarks, tools) there is no registry bean: keep meters in memory
+        registry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    /**
+     * Starts collecting stats for one request
+     */
+    public ConversionStats start(String endpoint) {
+        return new ConversionStats(endpoint);
+    }
+
+    /**
+     * Records the totals of a finished request, tagged outcome=success or outcome=error
+     * Only the first call per request records; later calls (e.g. a failure path after success) are ignored
+     */
+    public void record(ConversionStats stats, boolean success) {
+        String endpoint = stats.getEndpoint();
+        if (endpoint == null || !stats.markRecorded()) {
+            return;
+        }
+        Tags tags = Tags.of("endpoint", endpoint, "outcome", success ? "success" : "error");
+
+        for (ConversionStats.Stage stage : ConversionStats.Stage.values()) {
+            long nanos = stats.getStageNanos(stage);
+            if (nanos > 0) {
+                Timer.builder("converter.stage.duration")
+                    .description("Time spent per conversion stage")
+                    .tags(tags)
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        long totalNanos = System.nanoTime() - stats.getStartNanos();
+        Timer.builder("converter.request.duration")
+            .description("End-to-end conversion time")
+            .tags(tags)
+            .register(registry)
+            .record(totalNanos, TimeUnit.NANOSECONDS);
+
+        long rows = stats.getRows();
+        counter("converter.rows", "Data rows converted", tags).increment(rows);
+        counter("converter.bytes.in", "Uploaded CSV bytes", tags).increment(stats.getBytesIn());
+        counter("converter.bytes.out", "Workbook bytes written", tags).increment(stats.getBytesOut());
+
+        Counter.builder("converter.csv.bytes")
+            .description("CSV bytes decoded, or skipped outside the column projection")
+            .tags(tags)
+            .tag("result", "decoded")
+            .register(registry)
+            .increment(stats.getCsvBytesDecoded());
+        Counter.builder("converter.csv.bytes")
+            .description("CSV bytes decoded, or skipped outside the column projection")
+            .tags(tags)
+            .tag("result", "skipped")
+            .register(registry)
+            .increment(stats.getCsvBytesSkipped());
+
+        Counter.builder("converter.classifications")
+            .description("Wagon type lookups")
+            .tags(tags)
+            .tag("result", "hit")
+            .register(registry)
+            .increment(stats.getClassificationHits());
+        Counter.builder("converter.classifications")
+            .description("Wagon type lookups")
+            .tags(tags)
+            .tag("result", "miss")
+            .register(registry)
+            .increment(stats.getClassificationMisses());
+
+        if (rows > 0 && totalNanos > 0) {
+            summary("converter.throughput", "Rows converted per second", "rows/s", tags)
+                .record(rows * 1_000_000_000.0 / totalNanos);
+        }
+        if (stats.getCellStyles() > 0) {
+            summary("converter.workbook.styles", "Cell styles created per request", "styles", tags)
+                .record(stats.getCellStyles());
+            summary("converter.workbook.merged.regions", "Merged regions created per request", "regions", tags)
+                .record(stats.getMergedRegions());
+        }
+
+        Boolean cacheHit = stats.getCacheHit();
+        if (cacheHit != null) {
+            Counter.builder("converter.cache")
+                .description("Result cache lookups")
+                .tags(tags)
+                .tag("result", cacheHit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+        }
+    }
+
+    private Counter counter(String name, String description, Tags tags) {
+        return Counter.builder(name)
+            .description(description)
+            .tags(tags)
+            .register(registry);
+    }
+
+    private DistributionSummary summary(String name, String description, String unit, Tags tags) {
+        return DistributionSummary.builder(name)
+            .description(description)
+            .baseUnit(unit)
+            .tags(tags)
+            .register(registry);
+    }
+}
@@ -0,0 +1,508 @@
+package com.company.csvconverter.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caches generated workbooks by (SHA-256 of the uploaded CSV, classification generation, artifact)
+ * Re-uploading the same file returns the stored XLSX without parsing or classifying it again.
+ * Bounded by memory size, disk size and TTL; least recently used entries are spilled to disk
+ * when memory is full and dropped when disk is full. Saving classifications drops older generations.
+ */
+@Service
+public class ConversionResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversionResultCache.class);
+
+    public enum Artifact { REPORT, INTERMEDIATE }
+
+    @Value("${converter.cache.enabled:true}")
+    private boolean enabled = true;
+
+    // Total size of the workbooks kept in memory
+    @Value("${converter.cache.max-memory-mb:64}")
+    private long maxMemoryMb = 64;
+
+    // Total size of the workbooks spilled to disk (0 disables spilling)
+    @Value("${converter.cache.max-disk-mb:512}")
+    private long maxDiskMb = 512;
+
+    // Larger workbooks are never cached
+    @Value("${converter.cache.max-entry-mb:32}")
+    private long maxEntryMb = 32;
+
+    @Value("${converter.cache.ttl-minutes:60}")
+    private long ttlMinutes = 60;
+
+    @Value("${converter.cache.dir:${java.io.tmpdir}/csv-converter-cache}")
+    private String cacheDir;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Guards entries and the byte counts; a lock, not a monitor, since spills and opens do file I/O while holding it
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Path cachePath;
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+
+    // Latest classification generation announced; results of older generations are not stored
+    private volatile long latestGeneration = 0;
+
+    @PostConstruct
+    public void init() throws Exception {
+        cachePath = Paths.get(cacheDir);
+        Files.createDirectories(cachePath);
+
+        // Generations restart at 1 after a restart, so spilled files (and unfinished captures) from a previous run are stale
+        try (DirectoryStream<Path> staleFiles = Files.newDirectoryStream(cachePath, "*.{xlsx,part}")) {
+            for (Path staleFile : staleFiles) {
+                Files.deleteIfExists(staleFile);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * SHA-256 of the uploaded bytes (hex), or null when the cache is disabled
+     */
+    public String hash(MultipartFile file) throws Exception {
+        if (!enabled) {
+            return null;
+        }
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream inputStream = file.getInputStream()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached workbook or null on a miss
+     * The returned hit holds an open stream and must be closed
+     */
+    public Hit get(String contentHash, long generation, Artifact artifact) throws IOException {
+        if (contentHash == null) {
+            return null;
+        }
+
+        String key = key(contentHash, generation, artifact);
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired()) {
+                remove(key);
+                return null;
+            }
+
+            // Spilled files are opened under the lock so a concurrent eviction cannot delete them first
+            InputStream inputStream = entry.data != null
+                ? new ByteArrayInputStream(entry.data)
+                : Files.newInputStream(entry.file);
+            return new Hit(inputStream, entry.size, entry.dataRows);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a workbook that was already built as a byte array
+     */
+    public void put(String contentHash, long generation, Artifact artifact, int dataRows, byte[] data) {
+        if (contentHash == null || data.length > maxEntryMb * 1024 * 1024 || generation < latestGeneration) {
+            return;
+        }
+
+        String key = key(contentHash, generation, artifact);
+        lock.lock();
+        try {
+            // Checked again under the lock: the generation may have moved on since the check above
+            if (generation < latestGeneration) {
+                return;
+            }
+            remove(key);
+            entries.put(key, new Entry(data, generation, dataRows));
+            memoryBytes += data.length;
+            enforceLimits();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a workbook captured into a file in the cache directory, moving the file into place
+     * The file is deleted when the workbook is not stored
+     */
+    private void putFile(String contentHash, long generation, Artifact artifact, int dataRows, Path capturedFile)
+            throws IOException {
+        long size = Files.size(capturedFile);
+        if (maxDiskMb == 0) {
+            // Spilling disabled: the entry can only live in memory
+            byte[] data = Files.readAllBytes(capturedFile);
+            Files.deleteIfExists(capturedFile);
+            put(contentHash, generation, artifact, dataRows, data);
+            return;
+        }
+
+        String key = key(contentHash, generation, artifact);
+        lock.lock();
+        try {
+            if (generation < latestGeneration || size > maxDiskMb * 1024 * 1024) {
+                Files.deleteIfExists(capturedFile);
+                return;
+            }
+            remove(key);
+            Path file = cachePath.resolve(key + ".xlsx");
+            Files.move(capturedFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Entry entry = new Entry(file, size, generation, dataRows);
+            entries.put(key, entry);
+            diskBytes += size;
+            enforceLimits();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wraps a response stream so the workbook written through it is also captured for the cache
+     * (into a file in the cache directory, not the heap)
+     * Call commit() after the workbook was written completely, and discard() in any case afterwards
+     */
+    public CapturingOutputStream capture(OutputStream target, String contentHash, long generation,
+                                         Artifact artifact, int dataRows) {
+        return new CapturingOutputStream(target, contentHash, generation, artifact, dataRows);
+    }
+
+    /**
+     * New classifications were saved: results built with older generations can never be hit again
+     */
+    @EventListener
+    public void onClassificationsChanged(ClassificationsChangedEvent event) {
+        lock.lock();
+        try {
+            latestGeneration = Math.max(latestGeneration, event.getGeneration());
+            entries.entrySet().removeIf(mapEntry -> {
+                Entry entry = mapEntry.getValue();
+                if (entry.generation < event.getGeneration()) {
+                    release(entry);
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${converter.cache.cleanup-interval-ms:60000}")
+    public void removeExpiredEntries() {
+        lock.lock();
+        try {
+            entries.entrySet().removeIf(mapEntry -> {
+                if (mapEntry.getValue().isExpired()) {
+                    release(mapEntry.getValue());
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String key(String contentHash, long generation, Artifact artifact) {
+        return contentHash + "-" + generation + "-" + artifact.name().toLowerCase();
+    }
+
+    /**
+     * Spills least recently used entries to disk until memory fits, then drops entries until disk fits
+     * Must be called with the lock held
+     */
+    private void enforceLimits() {
+        long maxMemoryBytes = maxMemoryMb * 1024 * 1024;
+        long maxDiskBytes = maxDiskMb * 1024 * 1024;
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (entry.data == null) {
+                continue;
+            }
+
+            if (entry.size <= maxDiskBytes && spill(mapEntry.getKey(), entry)) {
+                continue;
+            }
+            iterator.remove();
+            release(entry);
+        }
+
+        iterator = entries.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.file != null) {
+                iterator.remove();
+                release(entry);
+            }
+        }
+    }
+
+    private boolean spill(String key, Entry entry) {
+        Path file = cachePath.resolve(key + ".xlsx");
+        try {
+            Files.write(file, entry.data);
+        } catch (IOException e) {
+            log.warn("Could not spill cached workbook to {}: {}", file, e.getMessage());
+            return false;
+        }
+        memoryBytes -= entry.size;
+        diskBytes += entry.size;
+        entry.data = null;
+        entry.file = file;
+        return true;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    private void release(Entry entry) {
+        if (entry.data != null) {
+            memoryBytes -= entry.size;
+            entry.data = null;
+        }
+        if (entry.file != null) {
+            diskBytes -= entry.size;
+            try {
+                Files.deleteIfExists(entry.file);
+            } catch (IOException e) {
+                log.warn("Could not delete cached workbook {}: {}", entry.file, e.getMessage());
+            }
+            entry.file = null;
+        }
+    }
+
+    private class Entry {
+        final long size;
+        final long generation;
+        final int dataRows;
+        final Instant expiresAt = Instant.now().plus(Duration.ofMinutes(ttlMinutes));
+
+        // Exactly one of data / file is set while the entry is cached
+        byte[] data;
+        Path file;
+
+        Entry(byte[] data, long generation, int dataRows) {
+            this.data = data;
+            this.size = data.length;
+            this.generation = generation;
+            this.dataRows = dataRows;
+        }
+
+        Entry(Path file, long size, long generation, int dataRows) {
+            this.file = file;
+            this.size = size;
+            this.generation = generation;
+            this.dataRows = dataRows;
+        }
+
+        boolean isExpired() {
+            return Instant.now().isAfter(expiresAt);
+        }
+    }
+
+    /**
+     * A cached workbook: its size, the number of data rows it was built from and an open stream
+     */
+    public static class Hit implements Closeable {
+        private final InputStream inputStream;
+        private final long size;
+        private final int dataRows;
+
+        Hit(InputStream inputStream, long size, int dataRows) {
+            this.inputStream = inputStream;
+            this.size = size;
+            this.dataRows = dataRows;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getDataRows() {
+            return dataRows;
+        }
+
+        public void transferTo(OutputStream outputStream) throws IOException {
+            inputStream.transferTo(outputStream);
+        }
+
+        public byte[] readAllBytes() throws IOException {
+            return inputStream.readAllBytes();
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Forwards everything to the response and keeps a copy (up to the entry size limit) in a file for the cache
+     */
+    public class CapturingOutputStream extends FilterOutputStream {
+        private final String contentHash;
+        private final long generation;
+        private final Artifact artifact;
+        private final int dataRows;
+        private Path copyFile;
+        private OutputStream copy;
+        private long copySize;
+
+        CapturingOutputStream(OutputStream target, String contentHash, long generation,
+                              Artifact artifact, int dataRows) {
+            super(target);
+            this.contentHash = contentHash;
+            this.generation = generation;
+            this.artifact = artifact;
+            this.dataRows = dataRows;
+            if (contentHash != null && generation >= latestGeneration) {
+                try {
+                    copyFile = Files.createTempFile(cachePath, "capture-", ".part");
+                    copy = new BufferedOutputStream(Files.newOutputStream(copyFile), 64 * 1024);
+                } catch (IOException e) {
+                    log.warn("Could not capture workbook for the cache: {}", e.getMessage());
+                    discard();
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (reserve(1)) {
+                try {
+                    copy.write(b);
+                } catch (IOException e) {
+                    copyFailed(e);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (reserve(len)) {
+                try {
+                    copy.write(b, off, len);
+                } catch (IOException e) {
+                    copyFailed(e);
+                }
+            }
+        }
+
+        /**
+         * Whether the next len bytes still go to the copy; too large to cache: stop copying, keep streaming
+         */
+        private boolean reserve(int len) {
+            if (copy == null) {
+                return false;
+            }
+            copySize += len;
+            if (copySize > maxEntryMb * 1024 * 1024) {
+                discard();
+                return false;
+            }
+            return true;
+        }
+
+        private void copyFailed(IOException e) {
+            // A failing copy never fails the response
+            log.warn("Could not capture workbook for the cache: {}", e.getMessage());
+            discard();
+        }
+
+        /**
+         * Stores the captured workbook; only call once it was written completely
+         */
+        public void commit() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+                copy = null;
+                putFile(contentHash, generation, artifact, dataRows, copyFile);
+                copyFile = null;
+            } catch (IOException e) {
+                log.warn("Could not store captured workbook: {}", e.getMessage());
+            } finally {
+                discard();
+            }
+        }
+
+        /**
+         * Deletes an uncommitted copy (after a failed write); safe to call after commit()
+         */
+        public void discard() {
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (IOException e) {
+                    // Deleted below anyway
+                }
+                copy = null;
+            }
+            if (copyFile != null) {
+                try {
+                    Files.deleteIfExists(copyFile);
+                } catch (IOException e) {
+                    log.warn("Could not delete captured workbook {}: {}", copyFile, e.getMessage());
+                }
+                copyFile = null;
+            }
+        }
+    }
+}
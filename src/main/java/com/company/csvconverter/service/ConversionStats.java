@@ -0,0 +1,183 @@
+package com.company.csvconverter.service;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Per-request measurements collected while a conversion runs
+ * Stages sum their time locally and add it here once per stage and chunk (no per-row adds or meter lookups);
+ * ConversionMetrics publishes the totals once the request is done, tagged by endpoint.
+ * Per-row events (unknown wagon types, zone transformations) are also counted here
+ * and logged once per request instead of once per row.
+ */
+public class ConversionStats {
+
+    public enum Stage { READ, EXTRACT, CLASSIFY, SORT, BUILD, SERIALIZE }
+
+    private final String endpoint;
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder csvBytesDecoded = new LongAdder();
+    private final LongAdder csvBytesSkipped = new LongAdder();
+    private final LongAdder classificationHits = new LongAdder();
+    private final LongAdder classificationMisses = new LongAdder();
+    private final LongAdder cellStyles = new LongAdder();
+    private final LongAdder mergedRegions = new LongAdder();
+    private final LongAdder zoneTransformations = new LongAdder();
+    
+    // Rows per unknown wagon type (as it appeared in the CSV)
+    private final Map<String, LongAdder> unknownWagonTypes = new ConcurrentHashMap<>();
+
+    // null when the request did not look at the result cache
+    private volatile Boolean cacheHit;
+
+    // Set by the first record(): a request is published once, whichever of its paths finishes it
+    private final AtomicBoolean recorded = new AtomicBoolean();
+
+    /**
+     * Stats that are collected but not published (callers without an endpoint)
+     */
+    public ConversionStats() {
+        this(null);
+    }
+
+    public ConversionStats(String endpoint) {
+        this.endpoint = endpoint;
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+    }
+
+    public void addStageNanos(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    public void addRows(long count) {
+        rows.add(count);
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * CSV bytes read by the parser: decoded to Strings, or skipped as fields outside the column projection
+     */
+    public void addCsvBytes(long decoded, long skipped) {
+        csvBytesDecoded.add(decoded);
+        csvBytesSkipped.add(skipped);
+    }
+
+    public void classificationHit() {
+        classificationHits.increment();
+    }
+
+    public void classificationMiss(String wagonType) {
+        classificationMisses.increment();
+        unknownWagonTypes.computeIfAbsent(wagonType, key -> new LongAdder()).increment();
+    }
+
+    public void zoneTransformationApplied() {
+        zoneTransformations.increment();
+    }
+
+    public void addWorkbookStructure(int styles, int merged) {
+        cellStyles.add(styles);
+        mergedRegions.add(merged);
+    }
+
+    public void setCacheHit(boolean cacheHit) {
+        this.cacheHit = cacheHit;
+    }
+
+    /**
+     * True the first time it is called (the caller publishes the totals), false afterwards
+     */
+    boolean markRecorded() {
+        return recorded.compareAndSet(false, true);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getCsvBytesDecoded() {
+        return csvBytesDecoded.sum();
+    }
+
+    public long getCsvBytesSkipped() {
+        return csvBytesSkipped.sum();
+    }
+
+    public long getClassificationHits() {
+        return classificationHits.sum();
+    }
+
+    public long getClassificationMisses() {
+        return classificationMisses.sum();
+    }
+
+    public long getZoneTransformations() {
+        return zoneTransformations.sum();
+    }
+
+    public int getDistinctUnknownWagonTypes() {
+        return unknownWagonTypes.size();
+    }
+
+    /**
+     * The most frequent unknown wagon types with their row counts, e.g. "BOXNX=120, BCNZ=4"
+     */
+    public String describeUnknownWagonTypes(int limit) {
+        return unknownWagonTypes.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> entry) -> entry.getValue().sum()).reversed()
+                .thenComparing(Map.Entry::getKey))
+            .limit(limit)
+            .map(entry -> entry.getKey() + "=" + entry.getValue().sum())
+            .collect(Collectors.joining(", "));
+    }
+
+    public long getCellStyles() {
+        return cellStyles.sum();
+    }
+
+    public long getMergedRegions() {
+        return mergedRegions.sum();
+    }
+
+    public Boolean getCacheHit() {
+        return cacheHit;
+    }
+}
@@ -0,0 +1,186 @@
+package com.company.csvconverter.service;
+
+import com.opencsv.CSVReader;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads CSV records straight from bytes (a mapped upload or a heap buffer) and returns only the
+ * projected columns. Delimiters are found at byte level; fields outside the projection are skipped
+ * without being decoded, projected fields go through a ByteStringCache.
+ *
+ * Plain fields and fully quoted fields (with "" escapes) are handled here. Any other record (quotes
+ * inside a field, quoted line breaks, backslashes, whitespace before a quote) is decoded as a whole and
+ * handed to OpenCSV, so every record comes out exactly as CSVReader would return it.
+ * The range must start on a record boundary and must have passed CsvChunkSplitter (no bare CR line ends,
+ * no backslash escapes that change the quote parity).
+ */
+final class CsvByteScanner {
+
+    private final ByteBuffer data;
+    private final int end;
+    private final ByteStringCache strings;
+
+    // Projected position of each source column (-1: not projected), up to the last projected column
+    private final int[] slotOfColumn;
+    private final int slots;
+
+    private int position;
+
+    // Bytes of fields outside the projection that were stepped over without decoding
+    private long skippedBytes;
+    private long recordSkippedBytes;
+
+    CsvByteScanner(ByteBuffer data, int start, int end, int[] columnIndices, ByteStringCache strings) {
+        this.data = data;
+        this.position = start;
+        this.end = end;
+        this.strings = strings;
+        this.slots = columnIndices.length;
+
+        int lastColumn = -1;
+        for (int columnIndex : columnIndices) {
+            lastColumn = Math.max(lastColumn, columnIndex);
+        }
+        slotOfColumn = new int[lastColumn + 1];
+        Arrays.fill(slotOfColumn, -1);
+        for (int slot = 0; slot < columnIndices.length; slot++) {
+            if (columnIndices[slot] >= 0) {
+                slotOfColumn[columnIndices[slot]] = slot;
+            }
+        }
+    }
+
+    /**
+     * The projected fields of the next record ("" for columns the record does not have), null at the end
+     */
+    String[] next() throws Exception {
+        if (position >= end) {
+            return null;
+        }
+
+        int recordStart = position;
+        String[] row = new String[slots];
+        Arrays.fill(row, "");
+        recordSkippedBytes = 0;
+
+        int column = 0;
+        int i = position;
+        while (true) {
+            if (i < end && data.get(i) == '"') {
+                // Quoted field: content up to the closing quote, which must end the field
+                int contentStart = i + 1;
+                int j = contentStart;
+                boolean escapedQuotes = false;
+                while (true) {
+                    if (j >= end) {
+                        return delegate(recordStart);
+                    }
+                    byte b = data.get(j);
+                    if (b == '"') {
+                        if (j + 1 < end && data.get(j + 1) == '"') {
+                            escapedQuotes = true;
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    if (b == '\n' || b == '\r' || b == '\\') {
+                        return delegate(recordStart);
+                    }
+                    j++;
+                }
+                i = j + 1;
+                if (i < end && data.get(i) != ',' && data.get(i) != '\n' && data.get(i) != '\r') {
+                    return delegate(recordStart);
+                }
+                store(row, column, contentStart, j, escapedQuotes);
+            } else {
+                // Plain field: up to the next separator or line end
+                int fieldStart = i;
+                while (i < end) {
+                    byte b = data.get(i);
+                    if (b == ',' || b == '\n' || b == '\r') {
+                        break;
+                    }
+                    if (b == '"' || b == '\\') {
+                        return delegate(recordStart);
+                    }
+                    i++;
+                }
+                store(row, column, fieldStart, i, false);
+            }
+
+            if (i >= end) {
+                position = end;
+                skippedBytes += recordSkippedBytes;
+                return row;
+            }
+            byte b = data.get(i);
+            if (b == ',') {
+                column++;
+                i++;
+                continue;
+            }
+
+            // CRLF or LF (a bare CR never gets here, see CsvChunkSplitter)
+            position = b == '\r' ? i + 2 : i + 1;
+            skippedBytes += recordSkippedBytes;
+            return row;
+        }
+    }
+
+    /**
+     * Bytes stepped over so far without decoding (delegated records are decoded whole and count as read)
+     */
+    long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    private void store(String[] row, int column, int start, int end, boolean escapedQuotes) {
+        if (column >= slotOfColumn.length || slotOfColumn[column] < 0) {
+            recordSkippedBytes += end - start;
+            return;
+        }
+        row[slotOfColumn[column]] = escapedQuotes
+            ? strings.decode(data, start, end).replace("\"\"", "\"")
+            : strings.get(data, start, end);
+    }
+
+    /**
+     * Parses the record starting at recordStart with OpenCSV and projects it
+     * The record ends at the first line break outside quotes
+     */
+    private String[] delegate(int recordStart) throws Exception {
+        boolean inQuotes = false;
+        int recordEnd = end;
+        for (int i = recordStart; i < end; i++) {
+            byte b = data.get(i);
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes) {
+                recordEnd = i + 1;
+                break;
+            }
+        }
+        position = recordEnd;
+
+        String[] record;
+        try (CSVReader reader = new CSVReader(new StringReader(strings.decode(data, recordStart, recordEnd)))) {
+            record = reader.readNext();
+        }
+
+        String[] row = new String[slots];
+        Arrays.fill(row, "");
+        if (record != null) {
+            for (int column = 0; column < Math.min(record.length, slotOfColumn.length); column++) {
+                if (slotOfColumn[column] >= 0) {
+                    row[slotOfColumn[column]] = record[column];
+                }
+            }
+        }
+        return row;
+    }
+}
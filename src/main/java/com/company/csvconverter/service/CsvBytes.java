@@ -0,0 +1,103 @@
+package com.company.csvconverter.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The bytes of an uploaded CSV for the byte-level parse: a memory-mapped file for large uploads,
+ * a heap buffer for small ones. Closing deletes the file if it was spooled for this parse.
+ */
+final class CsvBytes implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvBytes.class);
+
+    private final ByteBuffer buffer;
+    private final Path file;
+    private final boolean deleteOnClose;
+
+    private CsvBytes(ByteBuffer buffer, Path file, boolean deleteOnClose) {
+        this.buffer = buffer;
+        this.file = file;
+        this.deleteOnClose = deleteOnClose;
+    }
+
+    /**
+     * Maps the upload when it has at least mapMinBytes, otherwise reads it into the heap.
+     * transferTo() moves a part the container already spooled to disk (Tomcat renames it), so mapping
+     * costs no copy; the upload cannot be read through the MultipartFile afterwards.
+     * Returns null when the upload is too large to map (more than 2 GB).
+     */
+    static CsvBytes of(MultipartFile csvFile, long mapMinBytes) throws IOException {
+        if (csvFile.getSize() < mapMinBytes) {
+            return new CsvBytes(ByteBuffer.wrap(csvFile.getBytes()), null, false);
+        }
+        if (csvFile.getSize() > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        Path spooled = Files.createTempFile("csv-upload-", ".csv");
+        try {
+            csvFile.transferTo(spooled.toFile());
+            return new CsvBytes(map(spooled), spooled, true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a CSV file that is already on disk (kept on close), or returns null when it is larger than 2 GB
+     */
+    static CsvBytes of(Path csvFile) throws IOException {
+        if (Files.size(csvFile) > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new CsvBytes(map(csvFile), csvFile, false);
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    int size() {
+        return buffer.limit();
+    }
+
+    /**
+     * A stream over the same bytes, for the OpenCSV fallback
+     */
+    InputStream inputStream() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    }
+
+    @Override
+    public void close() {
+        if (!deleteOnClose) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete spooled upload {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.company.csvconverter.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits CSV bytes into chunks that start on record boundaries, so each chunk can be parsed on its own
+ * A boundary is the byte after a newline that is outside quotes (quote parity, "" escapes toggle twice).
+ * Input the parity scan cannot follow exactly like OpenCSV does returns no split: backslash escapes
+ * (\" or \\), bare CR line ends, or charsets in which quotes and newlines are not single ASCII bytes.
+ */
+final class CsvChunkSplitter {
+
+    private CsvChunkSplitter() {
+    }
+
+    /**
+     * Chunk boundaries [dataStart, ..., length] after the first headerRecords records,
+     * or null when the data cannot be split safely (or has fewer records than the header needs)
+     */
+    static int[] split(ByteBuffer data, int headerRecords, int chunkCount, Charset charset) {
+        if (!isAsciiCompatible(charset)) {
+            return null;
+        }
+
+        int length = data.limit();
+        int[] boundaries = new int[chunkCount + 1];
+        int boundaryCount = 0;
+        int records = 0;
+        int nextTarget = Integer.MAX_VALUE;
+        long step = 0;
+        boolean inQuotes = false;
+
+        for (int i = 0; i < length; i++) {
+            byte b = data.get(i);
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\\') {
+                if (i + 1 < length && (data.get(i + 1) == '"' || data.get(i + 1) == '\\')) {
+                    return null;
+                }
+            } else if (b == '\r') {
+                if (!inQuotes && (i + 1 >= length || data.get(i + 1) != '\n')) {
+                    return null;
+                }
+            } else if (b == '\n' && !inQuotes) {
+                if (records < headerRecords) {
+                    records++;
+                    if (records == headerRecords) {
+                        // Data starts here: aim for chunks of equal size from this point on
+                        boundaries[boundaryCount++] = i + 1;
+                        step = Math.max(1, (length - (i + 1)) / chunkCount);
+                        nextTarget = (int) Math.min(Integer.MAX_VALUE, i + 1 + step);
+                    }
+                } else if (i + 1 >= nextTarget && i + 1 < length && boundaryCount < chunkCount) {
+                    boundaries[boundaryCount++] = i + 1;
+                    nextTarget = (int) Math.min(Integer.MAX_VALUE, i + 1 + step);
+                }
+            }
+        }
+
+        if (records < headerRecords) {
+            return null;
+        }
+        boundaries[boundaryCount++] = length;
+        return Arrays.copyOf(boundaries, boundaryCount);
+    }
+
+    /**
+     * End of the last complete record in data[start, end), after at most maxRecords records
+     * (start when no record is complete yet), or -1 when the bytes cannot be scanned exactly.
+     * At the end of the input, a last record without a line end counts as complete.
+     */
+    static int recordsEnd(ByteBuffer data, int start, int end, int maxRecords, boolean endOfInput) {
+        int recordsEnd = start;
+        int records = 0;
+        boolean inQuotes = false;
+        int i = start;
+        for (; i < end && records < maxRecords; i++) {
+            byte b = data.get(i);
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\\') {
+                if (i + 1 >= end && !endOfInput) {
+                    return recordsEnd;
+                }
+                if (i + 1 < end && (data.get(i + 1) == '"' || data.get(i + 1) == '\\')) {
+                    return -1;
+                }
+            } else if (b == '\r') {
+                // The byte after decides; wait for more input when it has not been read yet
+                if (i + 1 >= end && !endOfInput) {
+                    return recordsEnd;
+                }
+                if (!inQuotes && (i + 1 >= end || data.get(i + 1) != '\n')) {
+                    return -1;
+                }
+            } else if (b == '\n' && !inQuotes) {
+                records++;
+                recordsEnd = i + 1;
+            }
+        }
+
+        if (endOfInput && i == end && records < maxRecords) {
+            return end;
+        }
+        return recordsEnd;
+    }
+
+    static boolean isAsciiCompatible(Charset charset) {
+        return Arrays.equals("\"\\\r\n,".getBytes(charset), "\"\\\r\n,".getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,197 @@
+package com.company.csvconverter.service;
+
+import com.opencsv.CSVReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * CsvByteScanner for CSV streams: the stream is read in blocks, and the complete records of every block
+ * are scanned with the projection pushed down, so fields outside it are never decoded.
+ * From the first block CsvChunkSplitter cannot scan exactly (backslash escapes, bare CR line ends) or with
+ * a charset that is not ASCII-compatible, the rest of the stream is parsed by OpenCSV instead.
+ * Either way the records are the ones CSVReader would return.
+ */
+final class CsvStreamScanner implements AutoCloseable {
+
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    private final CountingInputStream in;
+    private final Charset charset;
+    private final ByteStringCache strings;
+
+    // buffer[position, length) is read but not returned yet; it starts on a record boundary
+    private byte[] buffer = new byte[BLOCK_BYTES];
+    private ByteBuffer view = ByteBuffer.wrap(buffer);
+    private int position;
+    private int length;
+    private boolean endOfInput;
+
+    private int[] columnIndices;
+    private CsvByteScanner block;
+    private int blockEnd;
+    private long skippedBytes;
+
+    private CSVReader fallback;
+
+    CsvStreamScanner(InputStream inputStream, Charset charset) {
+        this.in = new CountingInputStream(inputStream);
+        this.charset = charset;
+        this.strings = new ByteStringCache(charset);
+        if (!CsvChunkSplitter.isAsciiCompatible(charset)) {
+            startFallback();
+        }
+    }
+
+    /**
+     * All fields of the next record (for the rows before the data), null at the end
+     */
+    String[] nextRecord() throws Exception {
+        while (fallback == null) {
+            int end = CsvChunkSplitter.recordsEnd(view, position, length, 1, endOfInput);
+            if (end < 0) {
+                startFallback();
+            } else if (end > position) {
+                String record = strings.decode(view, position, end);
+                position = end;
+                try (CSVReader reader = new CSVReader(new StringReader(record))) {
+                    return reader.readNext();
+                }
+            } else if (endOfInput) {
+                return null;
+            } else {
+                fill();
+            }
+        }
+        return fallback.readNext();
+    }
+
+    /**
+     * Projects the records returned by next(): field i of a row is column columnIndices[i] ("" when absent)
+     */
+    void project(int[] columnIndices) {
+        this.columnIndices = columnIndices;
+    }
+
+    /**
+     * The projected fields of the next record, null at the end
+     */
+    String[] next() throws Exception {
+        while (fallback == null) {
+            if (block != null) {
+                String[] row = block.next();
+                if (row != null) {
+                    return row;
+                }
+                skippedBytes += block.getSkippedBytes();
+                position = blockEnd;
+                block = null;
+            }
+
+            int end = CsvChunkSplitter.recordsEnd(view, position, length, Integer.MAX_VALUE, endOfInput);
+            if (end < 0) {
+                startFallback();
+            } else if (end > position) {
+                block = new CsvByteScanner(view, position, end, columnIndices, strings);
+                blockEnd = end;
+            } else if (endOfInput) {
+                return null;
+            } else {
+                fill();
+            }
+        }
+
+        String[] record = fallback.readNext();
+        return record != null ? project(record) : null;
+    }
+
+    /**
+     * Bytes of fields outside the projection that were never decoded
+     */
+    long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * Bytes read and decoded (everything read that was not skipped)
+     */
+    long getDecodedBytes() {
+        return in.count - skippedBytes;
+    }
+
+    /**
+     * Moves the unreturned bytes to the front of the buffer and reads more, growing the buffer
+     * when a single record does not fit
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, length - position);
+            length -= position;
+            position = 0;
+        }
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            view = ByteBuffer.wrap(buffer);
+        }
+        length += in.readNBytes(buffer, length, buffer.length - length);
+        endOfInput = length < buffer.length;
+    }
+
+    private void startFallback() {
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(buffer, position, length - position), in);
+        fallback = new CSVReader(new InputStreamReader(rest, charset));
+    }
+
+    private String[] project(String[] record) {
+        String[] row = new String[columnIndices.length];
+        for (int i = 0; i < columnIndices.length; i++) {
+            int column = columnIndices[i];
+            row[i] = column >= 0 && column < record.length ? record[column] : "";
+        }
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fallback != null) {
+            fallback.close();
+        } else {
+            in.close();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
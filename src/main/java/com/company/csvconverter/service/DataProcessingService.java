@@ -1,13 +1,27 @@
 package com.company.csvconverter.service;
 
 import com.opencsv.CSVReader;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Arrays;
@@ -15,9 +29,55 @@ import java.util.Arrays;
 @Service
 public class DataProcessingService {
     
+    private static final Logger log = LoggerFactory.getLogger(DataProcessingService.class);
+    
+    // Unknown wagon types listed in the per-request summary
+    private static final int UNKNOWN_TYPES_LOGGED = 20;
+    
+    // Rows before the data: two preamble rows and the header row
+    private static final int HEADER_ROWS = 3;
+    
+    // Smallest chunk worth a parse task of its own
+    private static final int MIN_CHUNK_BYTES = 256 * 1024;
+    
     @Autowired
     private ClassificationService classificationService;
     
+    // Encoding of uploaded CSVs (used instead of the platform default)
+    @Value("${converter.csv.charset:UTF-8}")
+    private String csvCharsetName = "UTF-8";
+    
+    // Uploads of at least mmap-min-bytes are spooled to disk and memory-mapped instead of read into the heap
+    @Value("${converter.csv.mmap-min-bytes:262144}")
+    private long mmapMinBytes = 262144;
+    
+    // Parse uploads of at least min-bytes in chunks on several cores (output is identical to sequential parsing)
+    @Value("${converter.parse.parallel.enabled:true}")
+    private boolean parallelParseEnabled = true;
+    
+    @Value("${converter.parse.parallel.min-bytes:1048576}")
+    private long parallelParseMinBytes = 1048576;
+    
+    // Parse threads shared by all requests (0 = one per available processor)
+    @Value("${converter.parse.parallel.threads:0}")
+    private int parallelParseThreads = 0;
+    
+    private Charset csvCharset;
+    
+    private ForkJoinPool parsePool;
+    
+    @PostConstruct
+    public void init() {
+        csvCharset = Charset.forName(csvCharsetName);
+        int threads = parallelParseThreads > 0 ? parallelParseThreads : Runtime.getRuntime().availableProcessors();
+        parsePool = new ForkJoinPool(threads);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        parsePool.shutdownNow();
+    }
+    
     // UPDATED: Define the 8 columns we want to extract from CSV (added ZONE TO)
     private static final String[] TARGET_COLUMNS = {
         "ZONE TO",              // NEW: Added ZONE TO as first column
@@ -46,136 +106,447 @@ public class DataProcessingService {
     
     /**
      * Main method to process CSV file and return classified data
+     * Rows are streamed straight into a single list, so only one copy is held
      */
     public List<String[]> processCsvFile(MultipartFile csvFile) throws Exception {
-        // Read CSV data
-        List<String[]> csvData = readCsvFile(csvFile);
+        return processCsvFile(csvFile, classificationService.getSnapshot());
+    }
+    
+    /**
+     * Same as processCsvFile, classifying every row with the given classification snapshot
+     */
+    public List<String[]> processCsvFile(MultipartFile csvFile, ClassificationSnapshot classifications) throws Exception {
+        return processCsvFile(csvFile, classifications, new ConversionStats());
+    }
+    
+    /**
+     * Same as processCsvFile, adding stage timings and counts to the given request stats
+     */
+    public List<String[]> processCsvFile(MultipartFile csvFile, ClassificationSnapshot classifications, ConversionStats stats) throws Exception {
+        stats.addBytesIn(csvFile.getSize());
+        try (CsvBytes bytes = CsvBytes.of(csvFile, mmapMinBytes)) {
+            if (bytes == null) {
+                return processCsv(csvFile.getInputStream(), classifications, row -> { }, stats);
+            }
+            return processCsvBytes(bytes, classifications, row -> { }, stats);
+        }
+    }
+    
+    /**
+     * Same as processCsv for a CSV file on disk, which is memory-mapped and scanned in place
+     * The row listener may be called from several parse threads at once
+     */
+    public List<String[]> processCsv(Path csvFile, ClassificationSnapshot classifications,
+                                     Consumer<String[]> rowListener, ConversionStats stats) throws Exception {
+        try (CsvBytes bytes = CsvBytes.of(csvFile)) {
+            if (bytes == null) {
+                try (InputStream inputStream = Files.newInputStream(csvFile)) {
+                    return processCsv(inputStream, classifications, rowListener, stats);
+                }
+            }
+            return processCsvBytes(bytes, classifications, rowListener, stats);
+        }
+    }
+    
+    /**
+     * Scans the chunks of the CSV bytes (concurrently when there are several) and concatenates
+     * the rows in file order; falls back to OpenCSV when the bytes cannot be scanned
+     */
+    private List<String[]> processCsvBytes(CsvBytes bytes, ClassificationSnapshot classifications,
+                                           Consumer<String[]> rowListener, ConversionStats stats) throws Exception {
+        int[] boundaries = chunkBoundaries(bytes.buffer());
+        if (boundaries == null) {
+            try (InputStream inputStream = bytes.inputStream()) {
+                return processCsv(inputStream, classifications, rowListener, stats);
+            }
+        }
         
-        // Extract required columns starting from row 3
-        List<String[]> extractedData = extractRequiredColumns(csvData);
+        int chunkCount = boundaries.length - 1;
+        SymbolTable[] chunkSymbols = new SymbolTable[chunkCount];
+        List<List<String[]>> chunkRows = new ArrayList<>();
+        List<Consumer<String[]>> chunkConsumers = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            chunkSymbols[i] = new SymbolTable();
+            List<String[]> rows = new ArrayList<>();
+            chunkRows.add(rows);
+            chunkConsumers.add(row -> {
+                rows.add(row);
+                rowListener.accept(row);
+            });
+        }
+        int rowCount = parseChunks(bytes.buffer(), boundaries, classifications, stats, chunkSymbols, chunkConsumers, null);
         
-        // Add classification columns
-        List<String[]> classifiedData = addClassificationColumns(extractedData);
+        List<String[]> dataRows = new ArrayList<>(rowCount);
+        chunkRows.forEach(dataRows::addAll);
+        return sortAndAddHeader(dataRows, chunkSymbols[0], stats);
+    }
+    
+    /**
+     * Processes CSV data from any input stream; the row listener sees every classified row (e.g. for progress)
+     */
+    public List<String[]> processCsv(InputStream inputStream, ClassificationSnapshot classifications, Consumer<String[]> rowListener) throws Exception {
+        return processCsv(inputStream, classifications, rowListener, new ConversionStats());
+    }
+    
+    /**
+     * Same as processCsv, adding stage timings and counts to the given request stats
+     */
+    public List<String[]> processCsv(InputStream inputStream, ClassificationSnapshot classifications,
+                                     Consumer<String[]> rowListener, ConversionStats stats) throws Exception {
+        // Stream projected + classified rows into one list
+        SymbolTable symbols = new SymbolTable();
+        List<String[]> dataRows = new ArrayList<>();
+        streamCsv(inputStream, classifications, row -> {
+            dataRows.add(row);
+            rowListener.accept(row);
+        }, null, stats, symbols);
         
-        // NEW: Sort the data by ZONE TO order BEFORE returning
-        List<String[]> sortedData = sortDataByZone(classifiedData);
+        return sortAndAddHeader(dataRows, symbols, stats);
+    }
+    
+    /**
+     * Sorts the data rows by ZONE TO order and adds the header with classification columns as the first row
+     */
+    private List<String[]> sortAndAddHeader(List<String[]> dataRows, SymbolTable symbols, ConversionStats stats) {
+        // Sort the data by ZONE TO order BEFORE returning
+        long sortStart = System.nanoTime();
+        sortDataByZone(dataRows, symbols);
+        stats.addStageNanos(ConversionStats.Stage.SORT, System.nanoTime() - sortStart);
         
-        return sortedData;
+        // Add the headers with classification columns as the first row
+        List<String[]> classifiedData = new ArrayList<>(dataRows.size() + 1);
+        classifiedData.add(FINAL_COLUMNS);
+        classifiedData.addAll(dataRows);
+        return classifiedData;
     }
     
     /**
-     * Reads CSV file and returns all data as List of String arrays
+     * Fused parse -> classify -> aggregate pipeline for report-only requests
+     * Every row updates its IC STTN aggregate as it is parsed; no row list is built or sorted
      */
-    private List<String[]> readCsvFile(MultipartFile file) throws Exception {
-        try (CSVReader reader = new CSVReader(new InputStreamReader(file.getInputStream()))) {
-            List<String[]> data = reader.readAll();
-            System.out.println("CSV file read successfully. Total rows: " + data.size());
-            return data;
-        }
+    public StationAggregator aggregateCsvFile(MultipartFile csvFile) throws Exception {
+        return aggregateCsvFile(csvFile, classificationService.getSnapshot());
+    }
+    
+    /**
+     * Same as aggregateCsvFile, classifying every row with the given classification snapshot
+     */
+    public StationAggregator aggregateCsvFile(MultipartFile csvFile, ClassificationSnapshot classifications) throws Exception {
+        return aggregateCsvFile(csvFile, classifications, new ConversionStats());
     }
     
     /**
-     * Extracts only the required columns from CSV data
-     * Starts from row 3 (index 2) as header row
-     * Data extraction starts from row 4 (index 3)
+     * Same as aggregateCsvFile, adding stage timings and counts to the given request stats
+     * Aggregation takes the place of the zone sort, so its time is recorded as the SORT stage
      */
-    private List<String[]> extractRequiredColumns(List<String[]> csvData) {
-        List<String[]> extractedData = new ArrayList<>();
+    public StationAggregator aggregateCsvFile(MultipartFile csvFile, ClassificationSnapshot classifications, ConversionStats stats) throws Exception {
+        stats.addBytesIn(csvFile.getSize());
         
-        if (csvData.size() < 3) {
-            System.out.println("Warning: CSV has less than 3 rows. Using default headers.");
-            extractedData.add(TARGET_COLUMNS);
-            return extractedData;
+        // One partial aggregator per scanned chunk, merged in file order
+        StationAggregator aggregator;
+        try (CsvBytes bytes = CsvBytes.of(csvFile, mmapMinBytes)) {
+            int[] boundaries = bytes != null ? chunkBoundaries(bytes.buffer()) : null;
+            if (boundaries != null) {
+                aggregator = aggregateChunks(bytes.buffer(), boundaries, classifications, stats);
+            } else {
+                SymbolTable symbols = new SymbolTable();
+                aggregator = new StationAggregator(symbols);
+                try (InputStream inputStream = bytes != null ? bytes.inputStream() : csvFile.getInputStream()) {
+                    streamCsv(inputStream, classifications, aggregator::accept, ConversionStats.Stage.SORT, stats, symbols);
+                }
+            }
         }
         
-        // Get the header row (assuming it's row 3, which is index 2)
-        String[] headerRow = csvData.get(2);
-        System.out.println("Header row found: " + Arrays.toString(headerRow));
+        log.atInfo().setMessage("CSV aggregated")
+            .addKeyValue("rows", aggregator.getRowCount())
+            .addKeyValue("stations", aggregator.getStationCount())
+            .log();
+        return aggregator;
+    }
+    
+    /**
+     * Scans the chunks into one partial aggregator each and merges them in file order
+     */
+    private StationAggregator aggregateChunks(ByteBuffer data, int[] boundaries, ClassificationSnapshot classifications,
+                                              ConversionStats stats) throws Exception {
+        int chunkCount = boundaries.length - 1;
+        SymbolTable[] chunkSymbols = new SymbolTable[chunkCount];
+        List<StationAggregator> chunkAggregators = new ArrayList<>();
+        List<Consumer<String[]>> chunkConsumers = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            chunkSymbols[i] = new SymbolTable();
+            StationAggregator chunkAggregator = new StationAggregator(chunkSymbols[i]);
+            chunkAggregators.add(chunkAggregator);
+            chunkConsumers.add(chunkAggregator::accept);
+        }
+        parseChunks(data, boundaries, classifications, stats, chunkSymbols, chunkConsumers, ConversionStats.Stage.SORT);
+        
+        long mergeStart = System.nanoTime();
+        StationAggregator aggregator = chunkAggregators.get(0);
+        for (int i = 1; i < chunkCount; i++) {
+            aggregator.mergeFrom(chunkAggregators.get(i));
+        }
+        stats.addStageNanos(ConversionStats.Stage.SORT, System.nanoTime() - mergeStart);
+        return aggregator;
+    }
+    
+    /**
+     * Streaming ingestion: reads the CSV row by row and pushes every projected,
+     * classified and zone-transformed 10-column row to the given consumer.
+     * Nothing but the current row is held, so the consumer decides the memory footprint.
+     * Reads the header at row 3 (index 2), resolves the column indices once
+     * and then projects every data row from row 4 onwards (index 3 onwards)
+     * Returns the number of data rows pushed to the consumer
+     */
+    public int streamCsv(InputStream inputStream, ClassificationSnapshot classifications, Consumer<String[]> rowConsumer) throws Exception {
+        return streamCsv(inputStream, classifications, rowConsumer, new ConversionStats());
+    }
+    
+    /**
+     * Same as streamCsv, adding READ / EXTRACT / CLASSIFY time, row count and
+     * classification hits / misses to the given request stats
+     * Times are summed locally and added once, so the per-row cost is just the nanoTime calls
+     */
+    public int streamCsv(InputStream inputStream, ClassificationSnapshot classifications,
+                         Consumer<String[]> rowConsumer, ConversionStats stats) throws Exception {
+        return streamCsv(inputStream, classifications, rowConsumer, null, stats, new SymbolTable());
+    }
+    
+    /**
+     * Same as streamCsv, interning every projected cell in the given request symbol table:
+     * rows hold the canonical instance of each value, and classification / zone rules are
+     * evaluated once per distinct value instead of once per row.
+     * The consumer's time is added to consumerStage (not recorded when null)
+     */
+    int streamCsv(InputStream inputStream, ClassificationSnapshot classifications, Consumer<String[]> rowConsumer,
+                  ConversionStats.Stage consumerStage, ConversionStats stats, SymbolTable symbols) throws Exception {
+        try (CsvStreamScanner records = new CsvStreamScanner(inputStream, csvCharset)) {
+            int[] columnIndices = readColumnIndices(records::nextRecord);
+            if (columnIndices == null) {
+                return 0;
+            }
+            
+            // Push the projection down: the scanner never decodes the other columns
+            records.project(columnIndices);
+            int dataRowsProcessed = streamRows(records::next, classifications, rowConsumer, consumerStage, stats, symbols);
+            stats.addCsvBytes(records.getDecodedBytes(), records.getSkippedBytes());
+            logStreamSummary(dataRowsProcessed, stats);
+            return dataRowsProcessed;
+        }
+    }
+    
+    /**
+     * Skips the two preamble rows, reads the header row and resolves the target column indices
+     * Returns null when the CSV has less than 3 rows
+     */
+    private int[] readColumnIndices(RecordSource records) throws Exception {
+        String[] headerRow = null;
+        for (int i = 0; i < HEADER_ROWS; i++) {
+            headerRow = records.next();
+            if (headerRow == null) {
+                log.warn("CSV has less than 3 rows, no data to process");
+                return null;
+            }
+        }
+        log.debug("Header row found: {}", Arrays.toString(headerRow));
         
         // Find column indices for our target columns
-        int[] columnIndices = findColumnIndices(headerRow, TARGET_COLUMNS);
+        return findColumnIndices(headerRow, TARGET_COLUMNS);
+    }
+    
+    /**
+     * Next record of a CSV (null at the end): all fields of a header row, or the projected fields of a data row
+     */
+    private interface RecordSource {
+        String[] next() throws Exception;
+    }
+    
+    /**
+     * Canonicalises, classifies and zone-transforms every remaining (projected) record of the source into the consumer
+     * Times are summed locally and added once, so the per-row cost is just the nanoTime calls;
+     * the consumer is timed with the same calls and added to consumerStage when it is not null
+     */
+    private int streamRows(RecordSource records, ClassificationSnapshot classifications, Consumer<String[]> rowConsumer,
+                           ConversionStats.Stage consumerStage, ConversionStats stats, SymbolTable symbols) throws Exception {
+        int dataRowsProcessed = 0;
+        long readNanos = 0;
+        long extractNanos = 0;
+        long classifyNanos = 0;
+        long consumerNanos = 0;
+        long lastTime = System.nanoTime();
+        String[] currentRow;
+        try {
+            while ((currentRow = records.next()) != null) {
+                long readTime = System.nanoTime();
+                String[] extractedRow = extractRow(currentRow, symbols);
+                long extractTime = System.nanoTime();
+                String[] classifiedRow = classifyRow(extractedRow, classifications, stats, symbols);
+                long classifyTime = System.nanoTime();
+                
+                readNanos += readTime - lastTime;
+                extractNanos += extractTime - readTime;
+                classifyNanos += classifyTime - extractTime;
+                
+                rowConsumer.accept(classifiedRow);
+                dataRowsProcessed++;
+                lastTime = System.nanoTime();
+                consumerNanos += lastTime - classifyTime;
+            }
+            readNanos += System.nanoTime() - lastTime;
+        } finally {
+            stats.addStageNanos(ConversionStats.Stage.READ, readNanos);
+            stats.addStageNanos(ConversionStats.Stage.EXTRACT, extractNanos);
+            stats.addStageNanos(ConversionStats.Stage.CLASSIFY, classifyNanos);
+            if (consumerStage != null) {
+                stats.addStageNanos(consumerStage, consumerNanos);
+            }
+            stats.addRows(dataRowsProcessed);
+        }
+        return dataRowsProcessed;
+    }
+    
+    /**
+     * Record boundaries [dataStart, ..., length] of the chunks to scan: several for large uploads
+     * when parallel parsing is enabled, otherwise one. Null when the bytes cannot be scanned
+     * (see CsvChunkSplitter), in which case the CSV is streamed instead.
+     */
+    private int[] chunkBoundaries(ByteBuffer data) {
+        int chunkCount = 1;
+        if (parallelParseEnabled && data.limit() >= parallelParseMinBytes) {
+            chunkCount = Math.max(1, Math.min(parsePool.getParallelism(), data.limit() / MIN_CHUNK_BYTES));
+        }
+        int[] boundaries = CsvChunkSplitter.split(data, HEADER_ROWS, chunkCount, csvCharset);
+        if (boundaries == null) {
+            log.debug("Parsing {} bytes with OpenCSV", data.limit());
+        }
+        return boundaries;
+    }
+    
+    /**
+     * Parses the header with OpenCSV and scans the data chunks, concurrently on the parse pool when there are several
+     * Chunk i is projected and classified with its own symbol table into its own consumer, so the
+     * consumers see exactly the rows a sequential parse would give them, split at the chunk boundaries.
+     * The consumers' time is added to consumerStage (not recorded when null), once per chunk.
+     * Returns the total number of data rows
+     */
+    private int parseChunks(ByteBuffer data, int[] boundaries, ClassificationSnapshot classifications, ConversionStats stats,
+                            SymbolTable[] chunkSymbols, List<Consumer<String[]>> chunkConsumers,
+                            ConversionStats.Stage consumerStage) throws Exception {
+        int[] columnIndices;
+        String header = new ByteStringCache(csvCharset).decode(data, 0, boundaries[0]);
+        try (CSVReader reader = new CSVReader(new StringReader(header))) {
+            columnIndices = readColumnIndices(reader::readNext);
+        }
+        stats.addCsvBytes(boundaries[0], 0);
         
-        // Add our custom headers as first row
-        extractedData.add(TARGET_COLUMNS);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < boundaries.length; i++) {
+            int chunk = i;
+            int chunkBytes = boundaries[i + 1] - boundaries[i];
+            CsvByteScanner scanner = new CsvByteScanner(data, boundaries[i], boundaries[i + 1], columnIndices,
+                new ByteStringCache(csvCharset));
+            tasks.add(() -> {
+                int rows = streamRows(scanner::next, classifications, chunkConsumers.get(chunk), consumerStage,
+                    stats, chunkSymbols[chunk]);
+                stats.addCsvBytes(chunkBytes - scanner.getSkippedBytes(), scanner.getSkippedBytes());
+                return rows;
+            });
+        }
         
-        // Extract data from row 4 onwards (index 3 onwards)
         int dataRowsProcessed = 0;
-        for (int i = 3; i < csvData.size(); i++) {
-            String[] currentRow = csvData.get(i);
-            String[] extractedRow = new String[TARGET_COLUMNS.length];
-            
-            // Extract only the required columns
-            for (int j = 0; j < columnIndices.length; j++) {
-                if (columnIndices[j] != -1 && columnIndices[j] < currentRow.length) {
-                    extractedRow[j] = currentRow[columnIndices[j]];
-                } else {
-                    extractedRow[j] = ""; // Empty if column not found
+        if (tasks.size() == 1) {
+            dataRowsProcessed = tasks.get(0).call();
+        } else {
+            List<Future<Integer>> chunks = new ArrayList<>();
+            tasks.forEach(task -> chunks.add(parsePool.submit(task)));
+            try {
+                for (Future<Integer> chunk : chunks) {
+                    dataRowsProcessed += chunk.get();
                 }
+            } catch (ExecutionException e) {
+                chunks.forEach(chunk -> chunk.cancel(true));
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
             }
-            
-            extractedData.add(extractedRow);
-            dataRowsProcessed++;
         }
         
-        System.out.println("Data extraction completed. Processed " + dataRowsProcessed + " data rows.");
-        return extractedData;
+        log.debug("Scanned {} data rows in {} chunks", dataRowsProcessed, tasks.size());
+        logStreamSummary(dataRowsProcessed, stats);
+        return dataRowsProcessed;
     }
     
     /**
-     * UPDATED: Adds classification columns based on wagon types
-     * Converts 8-column data to 10-column data with classifications
+     * One log event per streamed file: row count, classification misses (top unknown types)
+     * and zone transformations, instead of one line per row
      */
-    private List<String[]> addClassificationColumns(List<String[]> extractedData) {
-        List<String[]> classifiedData = new ArrayList<>();
+    private void logStreamSummary(int dataRowsProcessed, ConversionStats stats) {
+        log.atInfo().setMessage("CSV streamed")
+            .addKeyValue("rows", dataRowsProcessed)
+            .addKeyValue("classificationHits", stats.getClassificationHits())
+            .addKeyValue("classificationMisses", stats.getClassificationMisses())
+            .addKeyValue("zoneTransformations", stats.getZoneTransformations())
+            .addKeyValue("bytesDecoded", stats.getCsvBytesDecoded())
+            .addKeyValue("bytesSkipped", stats.getCsvBytesSkipped())
+            .log();
         
-        if (extractedData.isEmpty()) {
-            System.out.println("Warning: No extracted data to classify.");
-            return classifiedData;
+        if (stats.getDistinctUnknownWagonTypes() > 0) {
+            log.atWarn().setMessage("No classification found for some wagon types")
+                .addKeyValue("distinctTypes", stats.getDistinctUnknownWagonTypes())
+                .addKeyValue("rows", stats.getClassificationMisses())
+                .addKeyValue("types", stats.describeUnknownWagonTypes(UNKNOWN_TYPES_LOGGED))
+                .log();
         }
-        
-        // Add the new headers with classification columns
-        classifiedData.add(FINAL_COLUMNS);
-        
-        // Process data rows (skip header row)
-        int classifiedRows = 0;
-        for (int i = 1; i < extractedData.size(); i++) {
-            String[] originalRow = extractedData.get(i);
-            String[] newRow = new String[FINAL_COLUMNS.length];
-            
-            // UPDATED: Copy original data and add classifications (now with ZONE TO)
-            newRow[0] = originalRow[0]; // ZONE TO (NEW)
-            newRow[1] = originalRow[1]; // IC STTN
-            newRow[2] = originalRow[2]; // HANDED OVER STTN TO
-            newRow[3] = originalRow[3]; // HANDED OVER L/E
-            newRow[4] = originalRow[4]; // HANDED OVER TYPE
-            newRow[5] = classifyWagonType(originalRow[4]); // HANDED OVER TYPE CLASSIFICATION
-            newRow[6] = originalRow[5]; // TAKEN OVER STTN TO
-            newRow[7] = originalRow[6]; // TAKEN OVER L/E
-            newRow[8] = originalRow[7]; // TAKEN OVER TYPE
-            newRow[9] = classifyWagonType(originalRow[7]); // TAKEN OVER TYPE CLASSIFICATION
-            
-            classifiedData.add(newRow);
-            classifiedRows++;
+    }
+    
+    /**
+     * Replaces the cells of a projected row (the 8 target columns, "" where a column is missing)
+     * with their canonical instances
+     */
+    private String[] extractRow(String[] projectedRow, SymbolTable symbols) {
+        for (int j = 0; j < projectedRow.length; j++) {
+            projectedRow[j] = symbols.canonical(projectedRow[j]);
         }
+        return projectedRow;
+    }
+    
+    /**
+     * Converts an 8-column row to the 10-column layout with classifications
+     * and applies the zone transformation (NW + CNA -> AII) to IC STTN
+     */
+    private String[] classifyRow(String[] originalRow, ClassificationSnapshot classifications, ConversionStats stats,
+                                 SymbolTable symbols) {
+        String[] newRow = new String[FINAL_COLUMNS.length];
         
-        System.out.println("Classification completed. Classified " + classifiedRows + " rows.");
-        return classifiedData;
+        newRow[0] = originalRow[0]; // ZONE TO
+        newRow[1] = applyZoneTransformation(originalRow[0], originalRow[1], stats, symbols); // IC STTN
+        newRow[2] = originalRow[2]; // HANDED OVER STTN TO
+        newRow[3] = originalRow[3]; // HANDED OVER L/E
+        newRow[4] = originalRow[4]; // HANDED OVER TYPE
+        newRow[5] = classifyWagonType(originalRow[4], classifications, stats, symbols); // HANDED OVER TYPE CLASSIFICATION
+        newRow[6] = originalRow[5]; // TAKEN OVER STTN TO
+        newRow[7] = originalRow[6]; // TAKEN OVER L/E
+        newRow[8] = originalRow[7]; // TAKEN OVER TYPE
+        newRow[9] = classifyWagonType(originalRow[7], classifications, stats, symbols); // TAKEN OVER TYPE CLASSIFICATION
+        
+        return newRow;
     }
     
     /**
-     * Classifies wagon type using ClassificationService
+     * Classifies wagon type using a ClassificationService snapshot (looked up once per distinct type)
      */
-    private String classifyWagonType(String wagonType) {
-        if (wagonType == null || wagonType.trim().isEmpty()) {
+    private String classifyWagonType(String wagonType, ClassificationSnapshot classifications, ConversionStats stats,
+                                     SymbolTable symbols) {
+        SymbolTable.Token wagonTypeToken = symbols.token(wagonType);
+        if (wagonTypeToken.upperId == SymbolTable.NO_ID) {
             return "";
         }
         
-        String classification = classificationService.getClassification(wagonType);
+        String classification = symbols.classification(wagonTypeToken, classifications);
         if (classification == null) {
-            System.out.println("No classification found for wagon type: " + wagonType);
+            stats.classificationMiss(wagonType);
             return "";
         }
         
+        stats.classificationHit();
         return classification;
     }
     
@@ -197,10 +568,15 @@ public class DataProcessingService {
         }
         
         // Debug: Print column mapping
-        System.out.println("Column Mapping:");
+        if (log.isDebugEnabled()) {
+            for (int i = 0; i < targetColumns.length; i++) {
+                log.debug("Column mapping: {} -> {}", targetColumns[i], indices[i] != -1 ? "Column " + indices[i] : "NOT FOUND");
+            }
+        }
         for (int i = 0; i < targetColumns.length; i++) {
-            System.out.println(targetColumns[i] + " -> " + 
-                (indices[i] != -1 ? "Column " + indices[i] : "NOT FOUND"));
+            if (indices[i] == -1) {
+                log.warn("Column {} not found in the header row", targetColumns[i]);
+            }
         }
         
         return indices;
@@ -223,120 +599,80 @@ public class DataProcessingService {
     /**
      * Sorts the classified data by ZONE TO in the specified order: CR, WC, NW, DFCR
      * Then sorts IC STTN within each zone in the specified order
+     * Sorts the data rows (without header) in place
      */
-    private List<String[]> sortDataByZone(List<String[]> classifiedData) {
-        if (classifiedData.isEmpty()) {
-            return classifiedData;
+    private void sortDataByZone(List<String[]> dataRows, SymbolTable symbols) {
+        if (dataRows.isEmpty()) {
+            return;
         }
         
-        // Define the zone order
-        String[] zoneOrder = {"CR", "WC", "NW", "DFCR"};
-        Map<String, Integer> zoneOrderMap = new HashMap<>();
-        for (int i = 0; i < zoneOrder.length; i++) {
-            zoneOrderMap.put(zoneOrder[i], i);
+        // Sort key of every row (already zone-transformed at ingestion): the index of its normalized
+        // (ZONE TO, IC STTN) pair, computed once per row instead of once per comparison
+        int rowCount = dataRows.size();
+        int[] stationOfRow = new int[rowCount];
+        IdCounts stations = new IdCounts();
+        List<String[]> firstRowOfStation = new ArrayList<>();
+        for (int i = 0; i < rowCount; i++) {
+            String[] row = dataRows.get(i);
+            long pair = ((long) symbols.token(row[0]).upperId << 32) | (symbols.token(row[1]).upperId & 0xFFFFFFFFL);
+            stationOfRow[i] = stations.add(pair, 1);
+            if (stationOfRow[i] == firstRowOfStation.size()) {
+                firstRowOfStation.add(row);
+            }
         }
         
-        // Define IC STTN order within each zone
-        Map<String, String[]> icSttnOrderByZone = new HashMap<>();
-        icSttnOrderByZone.put("CR", new String[]{"BSR", "JL", "KNW"});
-        icSttnOrderByZone.put("WC", new String[]{"SHRN", "NAD", "MKC", "MTA", "CNA"});
-        icSttnOrderByZone.put("NW", new String[]{"BEC", "AII", "HMT", "BLDI", "PNU"});
-        icSttnOrderByZone.put("DFCR", new String[]{"BHU", "CECC", "GGM", "MSH", "SAU", "MPR", "GTX", "NOL", "SJN", "SAH"});
-        
-        // Create order maps for IC STTN within each zone
-        Map<String, Map<String, Integer>> icSttnOrderMaps = new HashMap<>();
-        for (Map.Entry<String, String[]> entry : icSttnOrderByZone.entrySet()) {
-            String zone = entry.getKey();
-            String[] icSttnOrder = entry.getValue();
-            Map<String, Integer> orderMap = new HashMap<>();
-            for (int i = 0; i < icSttnOrder.length; i++) {
-                orderMap.put(icSttnOrder[i], i);
+        // Order the few distinct pairs by ZONE TO, then by IC STTN within zone; pairs that compare equal share a rank
+        Integer[] orderedStations = new Integer[stations.size()];
+        for (int i = 0; i < orderedStations.length; i++) {
+            orderedStations[i] = i;
+        }
+        Comparator<Integer> byZone = (station1, station2) -> {
+            String[] row1 = firstRowOfStation.get(station1);
+            String[] row2 = firstRowOfStation.get(station2);
+            return ZoneOrder.compare(symbols.token(row1[0]), symbols.token(row1[1]), symbols.token(row2[0]), symbols.token(row2[1]));
+        };
+        Arrays.sort(orderedStations, byZone);
+        int[] rankOfStation = new int[orderedStations.length];
+        int rank = 0;
+        for (int i = 1; i < orderedStations.length; i++) {
+            if (byZone.compare(orderedStations[i - 1], orderedStations[i]) != 0) {
+                rank++;
             }
-            icSttnOrderMaps.put(zone, orderMap);
+            rankOfStation[orderedStations[i]] = rank;
         }
         
-        // Separate header and data
-        List<String[]> header = new ArrayList<>();
-        header.add(classifiedData.get(0));
-        List<String[]> dataRows = classifiedData.subList(1, classifiedData.size());
-        
-        // FIRST: Apply zone transformation to each row BEFORE sorting
-        List<String[]> transformedDataRows = dataRows.stream()
-            .map(row -> {
-                String[] transformedRow = row.clone(); // Clone to avoid modifying original
-                String zoneTo = transformedRow[0];
-                String icSttn = transformedRow[1];
-                
-                // Apply zone transformation: NW + CNA → AII
-                String transformedIcSttn = applyZoneTransformation(zoneTo, icSttn);
-                transformedRow[1] = transformedIcSttn; // Update IC STTN in the row
-                
-                return transformedRow;
-            })
-            .collect(Collectors.toList());
-        
-        // THEN: Sort transformed data rows by ZONE TO, then by IC STTN within zone
-        List<String[]> sortedDataRows = transformedDataRows.stream()
-            .sorted((row1, row2) -> {
-                String zone1 = row1[0] != null ? row1[0].trim().toUpperCase() : "";
-                String zone2 = row2[0] != null ? row2[0].trim().toUpperCase() : "";
-                String icSttn1 = row1[1] != null ? row1[1].trim().toUpperCase() : "";
-                String icSttn2 = row2[1] != null ? row2[1].trim().toUpperCase() : "";
-                
-                // First sort by zone order
-                int zone1Order = zoneOrderMap.getOrDefault(zone1, 999);
-                int zone2Order = zoneOrderMap.getOrDefault(zone2, 999);
-                
-                if (zone1Order != zone2Order) {
-                    return Integer.compare(zone1Order, zone2Order);
-                }
-                
-                // If zones are the same, sort by IC STTN order within that zone
-                Map<String, Integer> icSttnOrderMap = icSttnOrderMaps.get(zone1);
-                if (icSttnOrderMap != null) {
-                    int icSttn1Order = icSttnOrderMap.getOrDefault(icSttn1, 999); // 999 for unknown IC STTN
-                    int icSttn2Order = icSttnOrderMap.getOrDefault(icSttn2, 999);
-                    
-                    if (icSttn1Order != icSttn2Order) {
-                        return Integer.compare(icSttn1Order, icSttn2Order);
-                    }
-                    
-                    // If both are unknown (order = 999), sort alphabetically
-                    if (icSttn1Order == 999 && icSttn2Order == 999) {
-                        return icSttn1.compareTo(icSttn2);
-                    }
-                }
-                
-                // Fallback: sort alphabetically by IC STTN
-                return icSttn1.compareTo(icSttn2);
-            })
-            .collect(Collectors.toList());
-        
-        // Combine header and sorted data
-        List<String[]> sortedData = new ArrayList<>();
-        sortedData.addAll(header);
-        sortedData.addAll(sortedDataRows);
+        // Counting sort on the ranks: linear and stable (rows of equal rank keep file order)
+        int[] rankStart = new int[rank + 2];
+        for (int i = 0; i < stations.size(); i++) {
+            rankStart[rankOfStation[i] + 1] += stations.countAt(i);
+        }
+        for (int i = 1; i < rankStart.length; i++) {
+            rankStart[i] += rankStart[i - 1];
+        }
+        String[][] sortedRows = new String[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            sortedRows[rankStart[rankOfStation[stationOfRow[i]]]++] = dataRows.get(i);
+        }
+        for (int i = 0; i < rowCount; i++) {
+            dataRows.set(i, sortedRows[i]);
+        }
         
-        System.out.println("✅ Data sorted by ZONE TO (CR, WC, NW, DFCR) then by IC STTN in specified order");
-        System.out.println("🔄 Zone transformations applied BEFORE sorting (NW+CNA → AII)");
-        return sortedData;
+        log.debug("Data sorted by ZONE TO (CR, WC, NW, DFCR) then by IC STTN in specified order ({} distinct stations)",
+            stations.size());
     }
     
     /**
      * Applies zone transformation rules - SAME AS IN ExcelWriterService
      * Rule: If ZONE TO = "NW" and IC STTN = "CNA", change IC STTN to "AII"
      */
-    private String applyZoneTransformation(String zoneTo, String icSttn) {
+    private String applyZoneTransformation(String zoneTo, String icSttn, ConversionStats stats, SymbolTable symbols) {
         if (zoneTo == null || icSttn == null) {
             return icSttn; // Return original if either is null
         }
         
-        String cleanZoneTo = zoneTo.trim().toUpperCase();
-        String cleanIcSttn = icSttn.trim().toUpperCase();
-        
-        // Apply transformation rule: NW + CNA → AII
-        if ("NW".equals(cleanZoneTo) && "CNA".equals(cleanIcSttn)) {
-            System.out.println("Zone transformation applied: ZONE TO=" + zoneTo + ", IC STTN changed from " + icSttn + " to AII");
+        // Apply transformation rule: NW + CNA → AII (compared by normalized id)
+        if (symbols.isTransformedToAii(symbols.token(zoneTo), symbols.token(icSttn))) {
+            stats.zoneTransformationApplied();
             return "AII";
         }
         
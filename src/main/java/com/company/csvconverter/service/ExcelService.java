@@ -1,14 +1,16 @@
 package com.company.csvconverter.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
-
 @Service
 public class ExcelService {
     
+    private static final Logger log = LoggerFactory.getLogger(ExcelService.class);
+    
     @Autowired
     private DataProcessingService dataProcessingService;
     
@@ -20,15 +22,15 @@ public class ExcelService {
      * This is the only public method - clean and simple!
      */
     public byte[] convertCsvToExcel(MultipartFile csvFile) throws Exception {
-        System.out.println("Starting CSV to Excel conversion process...");
+        log.debug("Starting CSV to Excel conversion");
         
-        // Step 1: Process the CSV file and get classified data
-        List<String[]> classifiedData = dataProcessingService.processCsvFile(csvFile);
+        // Step 1: Process the CSV file and aggregate the classified data per IC STTN
+        StationAggregator aggregator = dataProcessingService.aggregateCsvFile(csvFile);
         
-        // Step 2: Create Excel report with the classified data
-        byte[] excelReport = excelWriterService.createExcelReport(classifiedData);
+        // Step 2: Create Excel report with the aggregated data
+        byte[] excelReport = excelWriterService.createExcelReport(aggregator);
         
-        System.out.println("CSV to Excel conversion completed successfully!");
+        log.debug("CSV to Excel conversion completed");
         return excelReport;
     }
 }
\ No newline at end of file
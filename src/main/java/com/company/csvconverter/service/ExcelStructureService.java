@@ -1,16 +1,84 @@
 package com.company.csvconverter.service;
 
+import jakarta.annotation.PostConstruct;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 @Service
 public class ExcelStructureService {
     
+    // Columns A-Y of the report
+    private static final int COLUMN_COUNT = 25;
+    
     @Autowired
     private ExcelStyleService styleService;
     
+    // Header rows 1-4, built once at startup: cells, merged regions and column widths
+    private final List<TemplateCell> templateCells = new ArrayList<>();
+    private final List<CellRangeAddress> templateMergedRegions = new ArrayList<>();
+    private final int[] templateColumnWidths = new int[COLUMN_COUNT];
+    
+    // Header styles by name, created per workbook through its style pool
+    private final Map<String, Function<Workbook, CellStyle>> headerStyleFactories = new HashMap<>();
+    
+    /**
+     * Builds the header rows once into a scratch workbook (including the autoSizeColumn pass over the
+     * DETAILS columns, which only ever hold header text) and keeps the result as a template
+     */
+    @PostConstruct
+    public void init() throws Exception {
+        headerStyleFactories.put("title", styleService::createTitleStyle);
+        headerStyleFactories.put("sectionHeader", styleService::createSectionHeaderStyle);
+        headerStyleFactories.put("columnHeader", styleService::createColumnHeaderStyle);
+        
+        try (Workbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet();
+            ExcelStylePool stylePool = new ExcelStylePool(workbook);
+            Map<Short, String> styleNames = new HashMap<>();
+            
+            // Create all styles
+            CellStyle titleStyle = templateStyle(stylePool, "title", styleNames);
+            CellStyle sectionHeaderStyle = templateStyle(stylePool, "sectionHeader", styleNames);
+            CellStyle columnHeaderStyle = templateStyle(stylePool, "columnHeader", styleNames);
+            CellStyle subColumnHeaderStyle = columnHeaderStyle; // Same style for now
+            
+            // Create the structure
+            createMainTitle(sheet, titleStyle);
+            createSectionHeaders(sheet, sectionHeaderStyle);
+            createColumnHeaders(sheet, columnHeaderStyle);
+            createSubColumnHeaders(sheet, subColumnHeaderStyle); // NEW ROW 4
+            setColumnWidths(sheet);
+            
+            // Capture the result
+            for (Row row : sheet) {
+                for (Cell cell : row) {
+                    String text = cell.getCellType() == CellType.STRING ? cell.getStringCellValue() : null;
+                    templateCells.add(new TemplateCell(row.getRowNum(), cell.getColumnIndex(), text,
+                        styleNames.get(cell.getCellStyle().getIndex())));
+                }
+            }
+            templateMergedRegions.addAll(sheet.getMergedRegions());
+            for (int col = 0; col < COLUMN_COUNT; col++) {
+                templateColumnWidths[col] = sheet.getColumnWidth(col);
+            }
+        }
+    }
+    
+    private CellStyle templateStyle(ExcelStylePool stylePool, String name, Map<Short, String> styleNames) {
+        CellStyle style = stylePool.named(name, headerStyleFactories.get(name));
+        styleNames.put(style.getIndex(), name);
+        return style;
+    }
+    
     /**
      * Creates the complete report structure (Rows 1-4)
      * Row 1: Main Title
@@ -19,18 +87,36 @@ public class ExcelStructureService {
      * Row 4: Sub-column Headers (L+E, detailed classifications)
      */
     public void createReportStructure(Sheet sheet, Workbook workbook) {
-        // Create all styles
-        CellStyle titleStyle = styleService.createTitleStyle(workbook);
-        CellStyle sectionHeaderStyle = styleService.createSectionHeaderStyle(workbook);
-        CellStyle columnHeaderStyle = styleService.createColumnHeaderStyle(workbook);
-        CellStyle subColumnHeaderStyle = styleService.createColumnHeaderStyle(workbook); // Same style for now
-        
-        // Create the structure
-        createMainTitle(sheet, titleStyle);
-        createSectionHeaders(sheet, sectionHeaderStyle);
-        createColumnHeaders(sheet, columnHeaderStyle);
-        createSubColumnHeaders(sheet, subColumnHeaderStyle); // NEW ROW 4
-        setColumnWidths(sheet);
+        createReportStructure(sheet, new ExcelStylePool(workbook));
+    }
+    
+    /**
+     * Same structure, stamped from the startup template with the header styles taken from the
+     * workbook's style pool (created once per workbook, however many report sheets it holds)
+     */
+    public void createReportStructure(Sheet sheet, ExcelStylePool stylePool) {
+        for (TemplateCell templateCell : templateCells) {
+            Row row = sheet.getRow(templateCell.row);
+            if (row == null) {
+                row = sheet.createRow(templateCell.row);
+            }
+            Cell cell = row.createCell(templateCell.column);
+            if (templateCell.text != null) {
+                cell.setCellValue(templateCell.text);
+            }
+            if (templateCell.style != null) {
+                cell.setCellStyle(stylePool.named(templateCell.style, headerStyleFactories.get(templateCell.style)));
+            }
+        }
+        
+        // The template regions are known not to overlap, so skip POI's overlap check
+        for (CellRangeAddress region : templateMergedRegions) {
+            sheet.addMergedRegionUnsafe(region.copy());
+        }
+        
+        for (int col = 0; col < COLUMN_COUNT; col++) {
+            sheet.setColumnWidth(col, templateColumnWidths[col]);
+        }
     }
     
     /**
@@ -267,6 +353,7 @@ public class ExcelStructureService {
     
     /**
      * Sets optimized column widths - UPDATED: New column positions
+     * Runs once on the template sheet; reports copy the resulting widths
      */
     private void setColumnWidths(Sheet sheet) {
         // Set width for "No. of Trains" columns
@@ -301,4 +388,22 @@ public class ExcelStructureService {
             }
         }
     }
+    
+    /**
+     * One header cell of the template (text null for a styled blank cell)
+     */
+    private static final class TemplateCell {
+        
+        private final int row;
+        private final int column;
+        private final String text;
+        private final String style;
+        
+        private TemplateCell(int row, int column, String text, String style) {
+            this.row = row;
+            this.column = column;
+            this.text = text;
+            this.style = style;
+        }
+    }
 }
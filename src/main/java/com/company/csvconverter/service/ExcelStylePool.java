@@ -0,0 +1,72 @@
+package com.company.csvconverter.service;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Per-workbook registry of cell styles
+ * Every distinct style is created exactly once and then reused for all cells,
+ * instead of creating a new CellStyle (and Font) per block or per cell
+ */
+public class ExcelStylePool {
+
+    // Border mask bits for thick outside borders
+    public static final int THICK_TOP = 1;
+    public static final int THICK_BOTTOM = 2;
+    public static final int THICK_LEFT = 4;
+    public static final int THICK_RIGHT = 8;
+
+    private final Workbook workbook;
+
+    // Styles built by a factory (data, merged, bold merged, total...), keyed by name
+    private final Map<String, CellStyle> namedStyles = new HashMap<>();
+
+    // Derived styles keyed by (base style index, border mask)
+    private final Map<Integer, CellStyle> borderedStyles = new HashMap<>();
+
+    public ExcelStylePool(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    /**
+     * Returns the style registered under the given name, creating it once with the factory
+     */
+    public CellStyle named(String name, Function<Workbook, CellStyle> factory) {
+        return namedStyles.computeIfAbsent(name, key -> factory.apply(workbook));
+    }
+
+    /**
+     * Returns the base style with THICK borders on the sides set in the mask
+     * Sides not in the mask keep the borders of the base style
+     */
+    public CellStyle withThickBorders(CellStyle baseStyle, int borderMask) {
+        if (borderMask == 0) {
+            return baseStyle;
+        }
+
+        int key = ((baseStyle.getIndex() & 0xFFFF) << 4) | borderMask;
+        return borderedStyles.computeIfAbsent(key, k -> {
+            CellStyle style = workbook.createCellStyle();
+            style.cloneStyleFrom(baseStyle);
+
+            if ((borderMask & THICK_TOP) != 0) style.setBorderTop(BorderStyle.THICK);
+            if ((borderMask & THICK_BOTTOM) != 0) style.setBorderBottom(BorderStyle.THICK);
+            if ((borderMask & THICK_LEFT) != 0) style.setBorderLeft(BorderStyle.THICK);
+            if ((borderMask & THICK_RIGHT) != 0) style.setBorderRight(BorderStyle.THICK);
+
+            return style;
+        });
+    }
+
+    /**
+     * Number of distinct styles created through this pool (for diagnostics)
+     */
+    public int getDistinctStyleCount() {
+        return namedStyles.size() + borderedStyles.size();
+    }
+}
@@ -1,30 +1,205 @@
 package com.company.csvconverter.service;
 
+import com.company.csvconverter.service.StationData.Category;
+import com.company.csvconverter.service.StationData.Direction;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class ExcelWriterService {
     
+    private static final Logger log = LoggerFactory.getLogger(ExcelWriterService.class);
+    
     @Autowired
     private ExcelStyleService styleService;
     
     @Autowired
     private ExcelStructureService structureService;
     
+    // Rows kept in memory by the streaming intermediate workbook before flushing to disk
+    @Value("${converter.intermediate.row-window:100}")
+    private int intermediateRowWindow = 100;
+    
+    // Compress the temp files holding flushed rows (smaller on disk, slightly more CPU)
+    @Value("${converter.intermediate.compress-temp-files:true}")
+    private boolean compressTempFiles = true;
+    
+    // Build the intermediate workbook and the report of one request concurrently (writeExcelFiles)
+    @Value("${converter.workbooks.parallel.enabled:true}")
+    private boolean parallelBuildEnabled = true;
+    
+    // Intermediate workbooks built at the same time across all requests; more requests build one after the other
+    @Value("${converter.workbooks.parallel.threads:2}")
+    private int parallelBuildThreads = 2;
+    
+    // Memory admission: build concurrently only if the used heap plus the estimated extra
+    // memory of the second build (bytes-per-row per data row) stays below max-heap-percent
+    @Value("${converter.workbooks.parallel.max-heap-percent:70}")
+    private int parallelBuildMaxHeapPercent = 70;
+    
+    @Value("${converter.workbooks.parallel.bytes-per-row:256}")
+    private long parallelBuildBytesPerRow = 256;
+    
+    private ThreadPoolExecutor buildExecutor;
+    
+    @PostConstruct
+    public void init() {
+        // No queue: when every thread is busy, the caller builds the intermediate workbook itself.
+        // Also after shutdown: CallerRunsPolicy would drop the task and leave the request waiting on it forever
+        AtomicInteger threadCount = new AtomicInteger();
+        buildExecutor = new ThreadPoolExecutor(parallelBuildThreads, parallelBuildThreads, 0L, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "workbook-build-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            (runnable, executor) -> runnable.run());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+    }
+    
+    /**
+     * Writes the intermediate workbook and the report for the same classified rows (streams not closed)
+     * The rows are shared read-only by both builds. The intermediate workbook is built on the build pool
+     * while this thread builds the report, unless parallel builds are disabled or memory admission refuses
+     * (then one after the other). BUILD / SERIALIZE times of both builds are summed in the stats.
+     */
+    public void writeExcelFiles(List<String[]> classifiedData, OutputStream intermediateStream, OutputStream reportStream,
+                                ConversionStats stats) throws Exception {
+        if (!admitParallelBuild(classifiedData.size())) {
+            writeIntermediateExcel(classifiedData, intermediateStream, stats);
+            writeExcelReport(classifiedData, reportStream, stats);
+            return;
+        }
+        
+        List<String[]> rows = Collections.unmodifiableList(classifiedData);
+        Future<?> intermediate = buildExecutor.submit(() -> {
+            writeIntermediateExcel(rows, intermediateStream, stats);
+            return null;
+        });
+        try {
+            writeExcelReport(rows, reportStream, stats);
+            intermediate.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            intermediate.cancel(true);
+        }
+    }
+    
+    /**
+     * Whether the heap has room for both workbook builds of a request with the given row count at once
+     */
+    private boolean admitParallelBuild(int rows) {
+        if (!parallelBuildEnabled) {
+            return false;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        long extraHeap = rows * parallelBuildBytesPerRow;
+        long heapLimit = runtime.maxMemory() / 100 * parallelBuildMaxHeapPercent;
+        if (usedHeap + extraHeap > heapLimit) {
+            log.atInfo().setMessage("Building workbooks one after the other to limit heap use")
+                .addKeyValue("rows", rows)
+                .addKeyValue("usedHeapMb", usedHeap >> 20)
+                .addKeyValue("heapLimitMb", heapLimit >> 20)
+                .log();
+            return false;
+        }
+        return true;
+    }
+    
     /**
      * Creates the complete Excel workbook with classified data
      * Returns byte array ready for download
      */
     public byte[] createExcelReport(List<String[]> classifiedData) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeExcelReport(classifiedData, outputStream);
+        return outputStream.toByteArray();
+    }
+    
+    /**
+     * Creates the complete Excel workbook from aggregates built while the CSV was parsed
+     * No row list is needed: the groups are already ordered by zone / IC STTN
+     */
+    public byte[] createExcelReport(StationAggregator aggregator) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeExcelReport(aggregator, outputStream);
+        return outputStream.toByteArray();
+    }
+    
+    /**
+     * Writes the complete Excel workbook with classified data to the given stream (not closed)
+     */
+    public void writeExcelReport(List<String[]> classifiedData, OutputStream outputStream) throws Exception {
+        writeExcelReport(classifiedData, outputStream, new ConversionStats());
+    }
+    
+    /**
+     * Same as writeExcelReport, adding BUILD / SERIALIZE time, bytes written,
+     * styles and merged regions to the given request stats
+     */
+    public void writeExcelReport(List<String[]> classifiedData, OutputStream outputStream, ConversionStats stats) throws Exception {
+        long buildStart = System.nanoTime();
+        if (classifiedData.isEmpty()) {
+            log.warn("No classified data to write to Excel");
+            buildExcelReport(null, -1, outputStream, stats, buildStart);
+            return;
+        }
+        
+        // Group data by ZONE TO then IC STTN (data is already zone-sorted)
+        buildExcelReport(groupDataByIcSttn(classifiedData), classifiedData.size() - 1, outputStream, stats, buildStart);
+    }
+    
+    /**
+     * Writes the complete Excel workbook from parse-time aggregates to the given stream (not closed)
+     */
+    public void writeExcelReport(StationAggregator aggregator, OutputStream outputStream) throws Exception {
+        writeExcelReport(aggregator, outputStream, new ConversionStats());
+    }
+    
+    /**
+     * Same as writeExcelReport, adding BUILD / SERIALIZE time, bytes written,
+     * styles and merged regions to the given request stats
+     */
+    public void writeExcelReport(StationAggregator aggregator, OutputStream outputStream, ConversionStats stats) throws Exception {
+        long buildStart = System.nanoTime();
+        buildExcelReport(aggregator.toOrderedMap(), aggregator.getRowCount(), outputStream, stats, buildStart);
+    }
+    
+    /**
+     * Builds the report workbook (header structure + station blocks + TOTAL row) and writes it out
+     */
+    private void buildExcelReport(Map<String, StationData> groupedData, int dataRowCount, OutputStream outputStream,
+                                  ConversionStats stats, long buildStart) throws Exception {
         // Create Excel workbook
         Workbook workbook = new XSSFWorkbook();
         
@@ -32,42 +207,79 @@ public class ExcelWriterService {
         Sheet reportSheet = workbook.createSheet("Zonal Interchange Report");
         
         // Create the complete report structure (Headers, Styling, Column Widths)
-        structureService.createReportStructure(reportSheet, workbook);
+        // and write the grouped data to the sheet (styles shared through one pool per workbook)
+        ExcelStylePool stylePool = new ExcelStylePool(workbook);
+        structureService.createReportStructure(reportSheet, stylePool);
         
-        // Write the classified data to the sheet
-        writeClassifiedDataToSheet(reportSheet, classifiedData, workbook);
+        if (groupedData != null) {
+            writeGroupedDataToSheet(reportSheet, groupedData, dataRowCount, stylePool);
+        }
         
-        // Convert workbook to byte array
-        byte[] excelData = convertWorkbookToByteArray(workbook);
+        stats.addWorkbookStructure(workbook.getNumCellStyles(), reportSheet.getNumMergedRegions());
+        
+        // Write the workbook straight to the output stream
+        long serializeStart = System.nanoTime();
+        stats.addStageNanos(ConversionStats.Stage.BUILD, serializeStart - buildStart);
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        workbook.write(countingStream);
+        stats.addStageNanos(ConversionStats.Stage.SERIALIZE, System.nanoTime() - serializeStart);
+        stats.addBytesOut(countingStream.getByteCount());
         
         // Close workbook to free memory
         workbook.close();
         
-        System.out.println("Excel report created successfully with " + (classifiedData.size() - 1) + " data rows.");
-        return excelData;
+        log.atInfo().setMessage("Excel report created")
+            .addKeyValue("rows", dataRowCount)
+            .addKeyValue("stations", groupedData != null ? groupedData.size() : 0)
+            .addKeyValue("dataStyles", stylePool.getDistinctStyleCount())
+            .addKeyValue("mergedRegions", reportSheet.getNumMergedRegions())
+            .log();
     }
-    
+
     /**
-     * Writes the classified data starting from Row 5 (after 4 header rows)
-     * CLEAN VERSION: No console logging, just Excel generation
+     * Writes one workbook holding a report sheet per aggregator, in map order (sheet name -> aggregator)
+     * All sheets share one style pool, so header and data styles are created once for the whole workbook
      */
-    // Update this part in writeClassifiedDataToSheet method
+    public void writeExcelReports(Map<String, StationAggregator> aggregatorsBySheet, OutputStream outputStream,
+                                  ConversionStats stats) throws Exception {
+        long buildStart = System.nanoTime();
+        Workbook workbook = new XSSFWorkbook();
+        ExcelStylePool stylePool = new ExcelStylePool(workbook);
+        
+        int mergedRegions = 0;
+        for (Map.Entry<String, StationAggregator> entry : aggregatorsBySheet.entrySet()) {
+            Sheet reportSheet = workbook.createSheet(entry.getKey());
+            structureService.createReportStructure(reportSheet, stylePool);
+            StationAggregator aggregator = entry.getValue();
+            writeGroupedDataToSheet(reportSheet, aggregator.toOrderedMap(), aggregator.getRowCount(), stylePool);
+            mergedRegions += reportSheet.getNumMergedRegions();
+        }
+        
+        stats.addWorkbookStructure(workbook.getNumCellStyles(), mergedRegions);
+        
+        long serializeStart = System.nanoTime();
+        stats.addStageNanos(ConversionStats.Stage.BUILD, serializeStart - buildStart);
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        workbook.write(countingStream);
+        stats.addStageNanos(ConversionStats.Stage.SERIALIZE, System.nanoTime() - serializeStart);
+        stats.addBytesOut(countingStream.getByteCount());
+        
+        workbook.close();
+        
+        log.atInfo().setMessage("Multi-sheet Excel report created")
+            .addKeyValue("sheets", aggregatorsBySheet.size())
+            .addKeyValue("dataStyles", stylePool.getDistinctStyleCount())
+            .addKeyValue("mergedRegions", mergedRegions)
+            .log();
+    }
 
 /**
- * Writes the classified data starting from Row 5 (after 4 header rows)
+ * Writes the grouped data starting from Row 5 (after 4 header rows)
  * UPDATED: Now handles zone-ordered data
  */
-private void writeClassifiedDataToSheet(Sheet sheet, List<String[]> classifiedData, Workbook workbook) {
-    if (classifiedData.isEmpty()) {
-        System.out.println("Warning: No classified data to write to Excel.");
-        return;
-    }
-    
-    // Create simple data style (no bold, no background)
-    CellStyle dataStyle = styleService.createDataStyle(workbook);
-    
-    // Group data by ZONE TO then IC STTN
-    Map<String, StationData> groupedData = groupDataByIcSttn(classifiedData);
+private void writeGroupedDataToSheet(Sheet sheet, Map<String, StationData> groupedData, int dataRowCount, ExcelStylePool stylePool) {
+    // Simple data style (no bold, no background)
+    CellStyle dataStyle = stylePool.named("data", styleService::createDataStyle);
     
     // Start writing data from Row 5 (index 4) - after our 4 header rows
     int currentRow = 4;
@@ -80,24 +292,20 @@ private void writeClassifiedDataToSheet(Sheet sheet, List<String[]> classifiedDa
         StationData stationData = entry.getValue();
         
         // Write BOTH summary AND detailed station rows starting from the SAME row
-        currentRow = writeCompleteStationData(sheet, currentRow, icSttn, stationData, dataStyle);
+        currentRow = writeCompleteStationData(sheet, currentRow, icSttn, stationData, dataStyle, stylePool);
         dataRowsWritten++;
     }
     
     // Add TOTAL row after all data (with one empty row gap)
-    addTotalRow(sheet, currentRow + 1, groupedData, dataStyle); // +1 for empty row gap
+    addTotalRow(sheet, currentRow + 1, groupedData, stylePool); // +1 for empty row gap
     
-    System.out.println("✅ Excel report generated successfully!");
-    System.out.println("📊 " + dataRowsWritten + " IC STTN stations processed (ordered by CR, WCR, NWR, DFCR)");
-    System.out.println("📈 " + (classifiedData.size() - 1) + " total data rows processed");
-    System.out.println("🔄 Zone transformations and classifications applied");
-    System.out.println("📋 TOTAL row added with calculated sums");
+    log.debug("{} IC STTN stations written (ordered by CR, WCR, NWR, DFCR) from {} data rows", dataRowsWritten, dataRowCount);
 }
     
     /**
      * Writes complete station data with THICK OUTSIDE BORDERS for each IC STTN block
      */
-    private int writeCompleteStationData(Sheet sheet, int startRow, String icSttn, StationData data, CellStyle dataStyle) {
+    private int writeCompleteStationData(Sheet sheet, int startRow, String icSttn, StationData data, CellStyle dataStyle, ExcelStylePool stylePool) {
         // Find the maximum number of stations across ALL classifications (both sections)
         int maxStations = Math.max(1, calculateMaxStations(data)); // At least 1 for summary row
         
@@ -116,68 +324,53 @@ private void writeClassifiedDataToSheet(Sheet sheet, List<String[]> classifiedDa
         writeSummaryRowData(summaryRow, icSttn, data, dataStyle);
         
         // Fill HANDEDOVER classification details starting from the SAME row (startRow + 0)
-        fillClassificationColumn(sheet, startRow, data.handedOverJumboStations, 4, dataStyle);     // Column E - JUMBO
-        fillClassificationColumn(sheet, startRow, data.handedOverBoxnStations, 5, dataStyle);      // Column F - BOXN
-        fillClassificationColumn(sheet, startRow, data.handedOverBtpnStations, 6, dataStyle);      // Column G - BTPN
-        fillClassificationColumn(sheet, startRow, data.handedOverBtpgStations, 7, dataStyle);      // Column H - BTPG
-        fillClassificationColumn(sheet, startRow, data.handedOverContStations, 8, dataStyle);      // Column I - CONT
-        fillClassificationColumn(sheet, startRow, data.handedOverShraStations, 9, dataStyle);      // Column J - SHRA
-        fillClassificationColumn(sheet, startRow, data.handedOverOthersStations, 10, dataStyle);   // Column K - OTHERS
-        fillClassificationColumn(sheet, startRow, data.handedOverEmptiesStations, 11, dataStyle);  // Column L - EMPTIES
+        // Columns E-L: JUMBO, BOXN, BTPN, BTPG, CONT, SHRA, OTHERS, EMPTIES
+        for (Category category : Category.values()) {
+            fillClassificationColumn(sheet, startRow, data, Direction.HANDED_OVER, category, 4 + category.ordinal(), dataStyle);
+        }
         
         // Fill TAKENOVER classification details starting from the SAME row (startRow + 0) - SHIFTED LEFT
-        fillClassificationColumn(sheet, startRow, data.takenOverJumboStations, 17, dataStyle);     // Column R - JUMBO (SHIFTED)
-        fillClassificationColumn(sheet, startRow, data.takenOverBoxnStations, 18, dataStyle);      // Column S - BOXN (SHIFTED)
-        fillClassificationColumn(sheet, startRow, data.takenOverBtpnStations, 19, dataStyle);      // Column T - BTPN (SHIFTED)
-        fillClassificationColumn(sheet, startRow, data.takenOverBtpgStations, 20, dataStyle);      // Column U - BTPG (SHIFTED)
-        fillClassificationColumn(sheet, startRow, data.takenOverContStations, 21, dataStyle);      // Column V - CONT (SHIFTED)
-        fillClassificationColumn(sheet, startRow, data.takenOverShraStations, 22, dataStyle);      // Column W - SHRA (SHIFTED)
-        fillClassificationColumn(sheet, startRow, data.takenOverOthersStations, 23, dataStyle);    // Column X - OTHERS (SHIFTED)
-        fillClassificationColumn(sheet, startRow, data.takenOverEmptiesStations, 24, dataStyle);   // Column Y - EMPTIES (SHIFTED)
+        // Columns R-Y: JUMBO, BOXN, BTPN, BTPG, CONT, SHRA, OTHERS, EMPTIES
+        for (Category category : Category.values()) {
+            fillClassificationColumn(sheet, startRow, data, Direction.TAKEN_OVER, category, 17 + category.ordinal(), dataStyle);
+        }
 
         // Merge cells for this IC STTN block
-        mergeCellsForIcSttn(sheet, startRow, maxStations, icSttn, data);
+        mergeCellsForIcSttn(sheet, startRow, maxStations, icSttn, data, stylePool);
 
         // NEW: Apply thick outside border around the entire IC STTN block
-        applyThickBorderAroundBlock(sheet, startRow, maxStations);
+        applyThickBorderAroundBlock(sheet, startRow, maxStations, stylePool);
 
         return startRow + maxStations; // Return the next available row for the next IC STTN
     }
 
     /**
      * Applies a thick outside border around a block of rows (IC STTN block).
+     * Border variants come from the style pool, so each (base style, sides) pair is created once per workbook
      */
-    private void applyThickBorderAroundBlock(Sheet sheet, int startRow, int rowCount) {
+    private void applyThickBorderAroundBlock(Sheet sheet, int startRow, int rowCount, ExcelStylePool stylePool) {
         if (rowCount <= 0) return;
         int endRow = startRow + rowCount - 1;
         int firstCol = 0;
         int lastCol = 24; // Columns A-Y (0-24)
 
-        Workbook workbook = sheet.getWorkbook();
-        CellStyle thickBorderStyle = workbook.createCellStyle();
-        thickBorderStyle.cloneStyleFrom(styleService.createDataStyle(workbook));
-        thickBorderStyle.setBorderTop(BorderStyle.THICK);
-        thickBorderStyle.setBorderBottom(BorderStyle.THICK);
-        thickBorderStyle.setBorderLeft(BorderStyle.THICK);
-        thickBorderStyle.setBorderRight(BorderStyle.THICK);
-
         for (int r = startRow; r <= endRow; r++) {
             Row row = sheet.getRow(r);
             if (row == null) continue;
             for (int c = firstCol; c <= lastCol; c++) {
-                Cell cell = row.getCell(c);
-                if (cell == null) cell = row.createCell(c);
+                int borderMask = 0;
+                if (r == startRow) borderMask |= ExcelStylePool.THICK_TOP;
+                if (r == endRow) borderMask |= ExcelStylePool.THICK_BOTTOM;
+                if (c == firstCol) borderMask |= ExcelStylePool.THICK_LEFT;
+                if (c == lastCol) borderMask |= ExcelStylePool.THICK_RIGHT;
 
-                CellStyle style = cell.getCellStyle();
-                CellStyle newStyle = workbook.createCellStyle();
-                newStyle.cloneStyleFrom(style);
+                // Inner cells keep their style untouched
+                if (borderMask == 0) continue;
 
-                if (r == startRow) newStyle.setBorderTop(BorderStyle.THICK);
-                if (r == endRow) newStyle.setBorderBottom(BorderStyle.THICK);
-                if (c == firstCol) newStyle.setBorderLeft(BorderStyle.THICK);
-                if (c == lastCol) newStyle.setBorderRight(BorderStyle.THICK);
+                Cell cell = row.getCell(c);
+                if (cell == null) cell = row.createCell(c);
 
-                cell.setCellStyle(newStyle);
+                cell.setCellStyle(stylePool.withThickBorders(cell.getCellStyle(), borderMask));
             }
         }
     }
@@ -186,11 +379,10 @@ private void writeClassifiedDataToSheet(Sheet sheet, List<String[]> classifiedDa
     /**
      * Merges cells for IC STTN and summary data columns - UPDATED: Bold IC STTN
      */
-    private void mergeCellsForIcSttn(Sheet sheet, int startRow, int rowCount, String icSttn, StationData data) {
+    private void mergeCellsForIcSttn(Sheet sheet, int startRow, int rowCount, String icSttn, StationData data, ExcelStylePool stylePool) {
         Row firstRow = sheet.getRow(startRow);
-        Workbook workbook = sheet.getWorkbook();
-        CellStyle mergedCellStyle = styleService.createMergedCellStyle(workbook);
-        CellStyle boldMergedCellStyle = styleService.createBoldMergedCellStyle(workbook); // NEW: Bold style for IC STTN
+        CellStyle mergedCellStyle = stylePool.named("merged", styleService::createMergedCellStyle);
+        CellStyle boldMergedCellStyle = stylePool.named("boldMerged", styleService::createBoldMergedCellStyle); // NEW: Bold style for IC STTN
         
         try {
             // ALWAYS write IC STTN name and summary data (whether merging or not)
@@ -198,28 +390,28 @@ private void writeClassifiedDataToSheet(Sheet sheet, List<String[]> classifiedDa
             // Column A - No. of Trains (HANDEDOVER)
             Cell trainCountHandedOverCell = firstRow.getCell(0);
             if (trainCountHandedOverCell != null) {
-                trainCountHandedOverCell.setCellValue(String.valueOf(data.handedOverTrainCount));
+                trainCountHandedOverCell.setCellValue(String.valueOf(data.trainCount(Direction.HANDED_OVER)));
                 trainCountHandedOverCell.setCellStyle(mergedCellStyle);
             }
             
             // Column B - JUMBO L+E (HANDEDOVER)
             Cell jumboHandedOverCell = firstRow.getCell(1);
             if (jumboHandedOverCell != null) {
-                jumboHandedOverCell.setCellValue(formatLePlusE(data.handedOverJumboL, data.handedOverJumboE));
+                jumboHandedOverCell.setCellValue(formatLePlusE(data, Direction.HANDED_OVER, Category.JUMBO));
                 jumboHandedOverCell.setCellStyle(mergedCellStyle);
             }
             
             // Column C - BOXN L+E (HANDEDOVER)
             Cell boxnHandedOverCell = firstRow.getCell(2);
             if (boxnHandedOverCell != null) {
-                boxnHandedOverCell.setCellValue(formatLePlusE(data.handedOverBoxnL, data.handedOverBoxnE));
+                boxnHandedOverCell.setCellValue(formatLePlusE(data, Direction.HANDED_OVER, Category.BOXN));
                 boxnHandedOverCell.setCellStyle(mergedCellStyle);
             }
             
             // Column D - BTPN L+E (HANDEDOVER)
             Cell btpnHandedOverCell = firstRow.getCell(3);
             if (btpnHandedOverCell != null) {
-                btpnHandedOverCell.setCellValue(formatLePlusE(data.handedOverBtpnL, data.handedOverBtpnE));
+                btpnHandedOverCell.setCellValue(formatLePlusE(data, Direction.HANDED_OVER, Category.BTPN));
                 btpnHandedOverCell.setCellStyle(mergedCellStyle);
             }
             
@@ -233,28 +425,28 @@ private void writeClassifiedDataToSheet(Sheet sheet, List<String[]> classifiedDa
             // Column N - No. of Trains (TAKENOVER) - SHIFTED LEFT
             Cell trainCountTakenOverCell = firstRow.getCell(13);
             if (trainCountTakenOverCell != null) {
-                trainCountTakenOverCell.setCellValue(String.valueOf(data.takenOverTrainCount));
+                trainCountTakenOverCell.setCellValue(String.valueOf(data.trainCount(Direction.TAKEN_OVER)));
                 trainCountTakenOverCell.setCellStyle(mergedCellStyle);
             }
             
             // Column O - JUMBO L+E (TAKENOVER) - SHIFTED LEFT
             Cell jumboTakenOverCell = firstRow.getCell(14);
             if (jumboTakenOverCell != null) {
-                jumboTakenOverCell.setCellValue(formatLePlusE(data.takenOverJumboL, data.takenOverJumboE));
+                jumboTakenOverCell.setCellValue(formatLePlusE(data, Direction.TAKEN_OVER, Category.JUMBO));
                 jumboTakenOverCell.setCellStyle(mergedCellStyle);
             }
             
             // Column P - BOXN L+E (TAKENOVER) - SHIFTED LEFT
             Cell boxnTakenOverCell = firstRow.getCell(15);
             if (boxnTakenOverCell != null) {
-                boxnTakenOverCell.setCellValue(formatLePlusE(data.takenOverBoxnL, data.takenOverBoxnE));
+                boxnTakenOverCell.setCellValue(formatLePlusE(data, Direction.TAKEN_OVER, Category.BOXN));
                 boxnTakenOverCell.setCellStyle(mergedCellStyle);
             }
             
             // Column Q - BTPN L+E (TAKENOVER) - SHIFTED LEFT
             Cell btpnTakenOverCell = firstRow.getCell(16);
             if (btpnTakenOverCell != null) {
-                btpnTakenOverCell.setCellValue(formatLePlusE(data.takenOverBtpnL, data.takenOverBtpnE));
+                btpnTakenOverCell.setCellValue(formatLePlusE(data, Direction.TAKEN_OVER, Category.BTPN));
                 btpnTakenOverCell.setCellStyle(mergedCellStyle);
             }
             
@@ -279,151 +471,42 @@ private void writeClassifiedDataToSheet(Sheet sheet, List<String[]> classifiedDa
             }
             
         } catch (Exception e) {
-            System.err.println("Error processing cells for IC STTN: " + icSttn + " - " + e.getMessage());
+            log.warn("Error processing cells for IC STTN {}: {}", icSttn, e.getMessage());
         }
     }
     
     /**
      * Groups the classified data by IC STTN and calculates L+E counts plus details
-     * UPDATED: Now handles 10 columns (8 extracted + 2 classified) with ZONE transformation
+     * Data is already sorted by DataProcessingService, so just group by IC STTN
      */
-    // Update this method in ExcelWriterService.java
-
-/**
- * Groups the classified data by ZONE TO (in specific order) then by IC STTN 
- * and calculates L+E counts plus details
- * UPDATED: Now sorts by ZONE TO in order: CR, WCR, NWR, DFCR
- */
-// Update groupDataByIcSttn method in ExcelWriterService.java - REMOVE zone sorting logic
-
-/**
- * Groups the classified data by IC STTN and calculates L+E counts plus details
- * UPDATED: Data is already sorted by DataProcessingService, so just group by IC STTN
- */
-private Map<String, StationData> groupDataByIcSttn(List<String[]> classifiedData) {
-    // Use LinkedHashMap to preserve the insertion order (data is already sorted)
-    Map<String, StationData> groupedData = new LinkedHashMap<>();
-    
-    // Skip header row (index 0) and process data rows
-    for (int i = 1; i < classifiedData.size(); i++) {
-        String[] row = classifiedData.get(i);
-        
-        // Extract data from the 10 columns
-        String icSttn = row[1];                           // IC STTN
-        String handedOverSttn = row[2];                   // HANDED OVER STTN TO
-        String handedOverLE = row[3];                     // HANDED OVER L/E
-        String handedOverType = row[4];                   // HANDED OVER TYPE
-        String handedOverClassification = row[5];         // HANDED OVER TYPE CLASSIFICATION (classified)
-        String takenOverSttn = row[6];                    // TAKEN OVER STTN TO
-        String takenOverLE = row[7];                      // TAKEN OVER L/E
-        String takenOverType = row[8];                    // TAKEN OVER TYPE
-        String takenOverClassification = row[9];          // TAKEN OVER TYPE CLASSIFICATION (classified)
-        
-        // APPLY ZONE TRANSFORMATION RULE
-        
-        
-        // Get or create station data for this IC STTN (data is already zone-sorted)
-        StationData stationData = groupedData.getOrDefault(icSttn, new StationData(icSttn));
+    Map<String, StationData> groupDataByIcSttn(List<String[]> classifiedData) {
+        // Use LinkedHashMap to preserve the insertion order (data is already sorted)
+        Map<String, StationData> groupedData = new LinkedHashMap<>();
+        SymbolTable symbols = new SymbolTable();
         
-        // Count HANDEDOVER station occurrences (ignore blanks)
-        if (handedOverSttn != null && !handedOverSttn.trim().isEmpty()) {
-            stationData.handedOverTrainCount++;
-        }
-        
-        // Count TAKENOVER station occurrences (ignore blanks)
-        if (takenOverSttn != null && !takenOverSttn.trim().isEmpty()) {
-            stationData.takenOverTrainCount++;
-        }
-        
-        // Count HANDEDOVER classifications by L/E
-        countHandedOverData(stationData, handedOverClassification, handedOverLE);
-        
-        // Count TAKENOVER classifications by L/E
-        countTakenOverData(stationData, takenOverClassification, takenOverLE);
-        
-        // Count HANDEDOVER details (L only) by classification and station
-        countHandedOverDetails(stationData, handedOverClassification, handedOverLE, handedOverSttn);
-        
-        // Count TAKENOVER details (L only) by classification and station
-        countTakenOverDetails(stationData, takenOverClassification, takenOverLE, takenOverSttn);
-        
-        // Count HANDEDOVER empties (E only) by wagon type - exclude CONT classification
-        if (!"CONT".equalsIgnoreCase(handedOverClassification)) {
-            countHandedOverEmpties(stationData, handedOverType, handedOverLE);
-        }
-
-        // Count TAKENOVER empties (E only) by wagon type - exclude CONT classification  
-        if (!"CONT".equalsIgnoreCase(takenOverClassification)) {
-            countTakenOverEmpties(stationData, takenOverType, takenOverLE);
+        // Skip header row (index 0) and process data rows
+        for (int i = 1; i < classifiedData.size(); i++) {
+            String[] row = classifiedData.get(i);
+            String icSttn = row[1]; // IC STTN
+            
+            // Get or create station data for this IC STTN and count the row
+            StationData stationData = groupedData.get(icSttn);
+            if (stationData == null) {
+                stationData = new StationData(icSttn, symbols);
+                groupedData.put(icSttn, stationData);
+            }
+            stationData.add(row);
         }
         
-        // Count HANDEDOVER others (L only) - non-main classifications
-        countHandedOverOthers(stationData, handedOverClassification, handedOverLE, handedOverSttn);
-        
-        // Count TAKENOVER others (L only) - non-main classifications
-        countTakenOverOthers(stationData, takenOverClassification, takenOverLE, takenOverSttn);
-        
-        // Store in grouped data (preserves the sorted order)
-        groupedData.put(icSttn, stationData);
+        log.debug("Data grouped by IC STTN (pre-sorted by zones): {} unique stations", groupedData.size());
+        return groupedData;
     }
     
-    System.out.println("Data grouped by IC STTN (pre-sorted by zones). Found " + groupedData.size() + " unique stations.");
-    return groupedData;
-}
-    /**
-     * NEW: Applies zone transformation rules
-     * Rule: If ZONE TO = "NW" and IC STTN = "CNA", change IC STTN to "AII"
-     */
-    // private String applyZoneTransformation(String zoneTo, String icSttn) {
-    //     if (zoneTo == null || icSttn == null) {
-    //         return icSttn; // Return original if either is null
-    //     }
-        
-    //     String cleanZoneTo = zoneTo.trim().toUpperCase();
-    //     String cleanIcSttn = icSttn.trim().toUpperCase();
-        
-    //     // Apply transformation rule: NW + CNA → AII
-    //     if ("NW".equals(cleanZoneTo) && "CNA".equals(cleanIcSttn)) {
-    //         System.out.println("Zone transformation applied: ZONE TO=" + zoneTo + ", IC STTN changed from " + icSttn + " to AII");
-    //         return "AII";
-    //     }
-        
-    //     // Add more transformation rules here if needed in the future
-    //     // Example:
-    //     // if ("WC".equals(cleanZoneTo) && "XYZ".equals(cleanIcSttn)) {
-    //     //     return "ABC";
-    //     // }
-        
-    //     return icSttn; // Return original IC STTN if no transformation rule applies
-    // }
-    
     /**
      * Calculates the maximum number of stations across all classifications
      */
     private int calculateMaxStations(StationData data) {
-        int maxStations = 0;
-        
-        // Check HANDEDOVER stations
-        maxStations = Math.max(maxStations, data.handedOverJumboStations.size());
-        maxStations = Math.max(maxStations, data.handedOverBoxnStations.size());
-        maxStations = Math.max(maxStations, data.handedOverBtpnStations.size());
-        maxStations = Math.max(maxStations, data.handedOverBtpgStations.size());
-        maxStations = Math.max(maxStations, data.handedOverContStations.size());
-        maxStations = Math.max(maxStations, data.handedOverShraStations.size());
-        maxStations = Math.max(maxStations, data.handedOverOthersStations.size());   // NEW: Others
-        maxStations = Math.max(maxStations, data.handedOverEmptiesStations.size());
-        
-        // Check TAKENOVER stations
-        maxStations = Math.max(maxStations, data.takenOverJumboStations.size());
-        maxStations = Math.max(maxStations, data.takenOverBoxnStations.size());
-        maxStations = Math.max(maxStations, data.takenOverBtpnStations.size());
-        maxStations = Math.max(maxStations, data.takenOverBtpgStations.size());
-        maxStations = Math.max(maxStations, data.takenOverContStations.size());
-        maxStations = Math.max(maxStations, data.takenOverShraStations.size());
-        maxStations = Math.max(maxStations, data.takenOverOthersStations.size());    // NEW: Others
-        maxStations = Math.max(maxStations, data.takenOverEmptiesStations.size());
-        
-        return maxStations;
+        return data.maxDetailSize();
     }
     
     /**
@@ -431,19 +514,26 @@ private Map<String, StationData> groupDataByIcSttn(List<String[]> classifiedData
      */
     private void writeSummaryRowData(Row excelRow, String icSttn, StationData data, CellStyle dataStyle) {
         // HANDEDOVER SECTION (Columns A-D, 0-3) - UNCHANGED
-        writeCell(excelRow, 0, String.valueOf(data.handedOverTrainCount), dataStyle);
-        writeCell(excelRow, 1, formatLePlusE(data.handedOverJumboL, data.handedOverJumboE), dataStyle);
-        writeCell(excelRow, 2, formatLePlusE(data.handedOverBoxnL, data.handedOverBoxnE), dataStyle);
-        writeCell(excelRow, 3, formatLePlusE(data.handedOverBtpnL, data.handedOverBtpnE), dataStyle);
+        writeCell(excelRow, 0, String.valueOf(data.trainCount(Direction.HANDED_OVER)), dataStyle);
+        writeCell(excelRow, 1, formatLePlusE(data, Direction.HANDED_OVER, Category.JUMBO), dataStyle);
+        writeCell(excelRow, 2, formatLePlusE(data, Direction.HANDED_OVER, Category.BOXN), dataStyle);
+        writeCell(excelRow, 3, formatLePlusE(data, Direction.HANDED_OVER, Category.BTPN), dataStyle);
         
         // IC STTN (Column M, index 12) - SHIFTED LEFT
         writeCell(excelRow, 12, icSttn, dataStyle);
         
         // TAKENOVER SECTION (Columns N-Q, 13-16) - SHIFTED LEFT
-        writeCell(excelRow, 13, String.valueOf(data.takenOverTrainCount), dataStyle);
-        writeCell(excelRow, 14, formatLePlusE(data.takenOverJumboL, data.takenOverJumboE), dataStyle);
-        writeCell(excelRow, 15, formatLePlusE(data.takenOverBoxnL, data.takenOverBoxnE), dataStyle);
-        writeCell(excelRow, 16, formatLePlusE(data.takenOverBtpnL, data.takenOverBtpnE), dataStyle);
+        writeCell(excelRow, 13, String.valueOf(data.trainCount(Direction.TAKEN_OVER)), dataStyle);
+        writeCell(excelRow, 14, formatLePlusE(data, Direction.TAKEN_OVER, Category.JUMBO), dataStyle);
+        writeCell(excelRow, 15, formatLePlusE(data, Direction.TAKEN_OVER, Category.BOXN), dataStyle);
+        writeCell(excelRow, 16, formatLePlusE(data, Direction.TAKEN_OVER, Category.BTPN), dataStyle);
+    }
+
+    /**
+     * Formats the L and E counts of one direction and category as "L+E"
+     */
+    private String formatLePlusE(StationData data, Direction direction, Category category) {
+        return formatLePlusE(data.count(direction, category, StationData.L), data.count(direction, category, StationData.E));
     }
 
     /**
@@ -457,313 +547,6 @@ private Map<String, StationData> groupDataByIcSttn(List<String[]> classifiedData
         }
     }
     
-    /**
-     * Counts HANDEDOVER data by classification and L/E
-     */
-    private void countHandedOverData(StationData stationData, String classification, String le) {
-        if (classification == null || le == null) return;
-        
-        // Count JUMBO by L and E
-        if ("JUMBO".equalsIgnoreCase(classification.trim())) {
-            if ("L".equalsIgnoreCase(le.trim())) {
-                stationData.handedOverJumboL++;
-            } else if ("E".equalsIgnoreCase(le.trim())) {
-                stationData.handedOverJumboE++;
-            }
-        }
-        
-        // Count BOXN by L and E
-        if ("BOX".equalsIgnoreCase(classification.trim()) || "BOXN".equalsIgnoreCase(classification.trim())) {
-            if ("L".equalsIgnoreCase(le.trim())) {
-                stationData.handedOverBoxnL++;
-            } else if ("E".equalsIgnoreCase(le.trim())) {
-                stationData.handedOverBoxnE++;
-            }
-        }
-        
-        // Count BTPN by L and E
-        if ("BTPN".equalsIgnoreCase(classification.trim())) {
-            if ("L".equalsIgnoreCase(le.trim())) {
-                stationData.handedOverBtpnL++;
-            } else if ("E".equalsIgnoreCase(le.trim())) {
-                stationData.handedOverBtpnE++;
-            }
-        }
-    }
-    
-    /**
-     * Counts TAKENOVER data by classification and L/E
-     */
-    private void countTakenOverData(StationData stationData, String classification, String le) {
-        if (classification == null || le == null) return;
-        
-        // Count JUMBO by L and E
-        if ("JUMBO".equalsIgnoreCase(classification.trim())) {
-            if ("L".equalsIgnoreCase(le.trim())) {
-                stationData.takenOverJumboL++;
-            } else if ("E".equalsIgnoreCase(le.trim())) {
-                stationData.takenOverJumboE++;
-            }
-        }
-        
-        // Count BOXN by L and E
-        if ("BOX".equalsIgnoreCase(classification.trim()) || "BOXN".equalsIgnoreCase(classification.trim())) {
-            if ("L".equalsIgnoreCase(le.trim())) {
-                stationData.takenOverBoxnL++;
-            } else if ("E".equalsIgnoreCase(le.trim())) {
-                stationData.takenOverBoxnE++;
-            }
-        }
-        
-        // Count BTPN by L and E
-        if ("BTPN".equalsIgnoreCase(classification.trim())) {
-            if ("L".equalsIgnoreCase(le.trim())) {
-                stationData.takenOverBtpnL++;
-            } else if ("E".equalsIgnoreCase(le.trim())) {
-                stationData.takenOverBtpnE++;
-            }
-        }
-    }
-    
-// Update this part in countHandedOverDetails method
-
-/**
- * Counts HANDEDOVER details - station names by classification (L only, EXCEPT CONT which includes L+E)
- */
-private void countHandedOverDetails(StationData stationData, String classification, String le, String station) {
-    // For CONT: Include both L and E
-    // For all others: Only count if L/E = "L"
-    boolean shouldCount = false;
-    
-    if ("CONT".equalsIgnoreCase(classification != null ? classification.trim() : "")) {
-        // CONT includes both L and E
-        shouldCount = ("L".equalsIgnoreCase(le != null ? le.trim() : "") || 
-                      "E".equalsIgnoreCase(le != null ? le.trim() : ""));
-    } else {
-        // All other classifications: only L
-        shouldCount = "L".equalsIgnoreCase(le != null ? le.trim() : "");
-    }
-    
-    if (!shouldCount || station == null || station.trim().isEmpty()) {
-        return;
-    }
-    
-    String cleanStation = station.trim();
-    String cleanClassification = classification != null ? classification.trim() : "";
-    
-    // Count by classification (unchanged logic)
-    if ("JUMBO".equalsIgnoreCase(cleanClassification)) {
-        stationData.handedOverJumboStations.put(cleanStation, 
-            stationData.handedOverJumboStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("BOX".equalsIgnoreCase(cleanClassification) || "BOXN".equalsIgnoreCase(cleanClassification)) {
-        stationData.handedOverBoxnStations.put(cleanStation, 
-            stationData.handedOverBoxnStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("BTPN".equalsIgnoreCase(cleanClassification)) {
-        stationData.handedOverBtpnStations.put(cleanStation, 
-            stationData.handedOverBtpnStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("BTPG".equalsIgnoreCase(cleanClassification)) {
-        stationData.handedOverBtpgStations.put(cleanStation, 
-            stationData.handedOverBtpgStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("CONT".equalsIgnoreCase(cleanClassification)) {
-        // CONT now includes both L and E
-        stationData.handedOverContStations.put(cleanStation, 
-            stationData.handedOverContStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("SHRA".equalsIgnoreCase(cleanClassification)) {
-        stationData.handedOverShraStations.put(cleanStation, 
-            stationData.handedOverShraStations.getOrDefault(cleanStation, 0) + 1);
-    } 
-}
-    
-    /**
-     * NEW: Counts HANDEDOVER empties - wagon types where L/E = "E" (excluding specific types)
-     */
-    private void countHandedOverEmpties(StationData stationData, String wagonType, String le) {
-        // Only count if L/E = "E" and wagon type is not blank
-        if (!"E".equalsIgnoreCase(le != null ? le.trim() : "") || 
-            wagonType == null || wagonType.trim().isEmpty()) {
-            return;
-        }
-        
-        String cleanWagonType = wagonType.trim().toUpperCase();
-        
-        // Skip these specific wagon types - do NOT include them in empties
-        if (isExcludedWagonType(cleanWagonType)) {
-            return; // Ignore these wagon types
-        }
-        
-        // Count wagon types for empties (only allowed types)
-        stationData.handedOverEmptiesStations.put(cleanWagonType, 
-            stationData.handedOverEmptiesStations.getOrDefault(cleanWagonType, 0) + 1);
-    }
-    // Update the countTakenOverEmpties method to exclude CONT from empties
-
-/**
- * NEW: Counts TAKENOVER empties - wagon types where L/E = "E" (excluding specific types AND CONT)
- */
-private void countTakenOverEmpties(StationData stationData, String wagonType, String le) {
-    // Only count if L/E = "E" and wagon type is not blank
-    if (!"E".equalsIgnoreCase(le != null ? le.trim() : "") || 
-        wagonType == null || wagonType.trim().isEmpty()) {
-        return;
-    }
-    
-    String cleanWagonType = wagonType.trim().toUpperCase();
-    
-    // Skip these specific wagon types - do NOT include them in empties
-    if (isExcludedWagonType(cleanWagonType)) {
-        return; // Ignore these wagon types
-    }
-    
-    // Count wagon types for empties (only allowed types)
-    stationData.takenOverEmptiesStations.put(cleanWagonType, 
-        stationData.takenOverEmptiesStations.getOrDefault(cleanWagonType, 0) + 1);
-}
-    
-    // Update this part in countTakenOverDetails method
-
-/**
- * Counts TAKENOVER details - station names by classification (L only, EXCEPT CONT which includes L+E)
- */
-private void countTakenOverDetails(StationData stationData, String classification, String le, String station) {
-    // For CONT: Include both L and E
-    // For all others: Only count if L/E = "L"
-    boolean shouldCount = false;
-    
-    if ("CONT".equalsIgnoreCase(classification != null ? classification.trim() : "")) {
-        // CONT includes both L and E
-        shouldCount = ("L".equalsIgnoreCase(le != null ? le.trim() : "") || 
-                      "E".equalsIgnoreCase(le != null ? le.trim() : ""));
-    } else {
-        // All other classifications: only L
-        shouldCount = "L".equalsIgnoreCase(le != null ? le.trim() : "");
-    }
-
-    if (!shouldCount || station == null || station.trim().isEmpty()) {
-        return;
-    }
-
-    String cleanStation = station.trim();
-    String cleanClassification = classification != null ? classification.trim() : "";
-
-    // Count by classification (unchanged logic)
-    if ("JUMBO".equalsIgnoreCase(cleanClassification)) {
-        stationData.takenOverJumboStations.put(cleanStation,
-            stationData.takenOverJumboStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("BOX".equalsIgnoreCase(cleanClassification) || "BOXN".equalsIgnoreCase(cleanClassification)) {
-        stationData.takenOverBoxnStations.put(cleanStation,
-            stationData.takenOverBoxnStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("BTPN".equalsIgnoreCase(cleanClassification)) {
-        stationData.takenOverBtpnStations.put(cleanStation,
-            stationData.takenOverBtpnStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("BTPG".equalsIgnoreCase(cleanClassification)) {
-        stationData.takenOverBtpgStations.put(cleanStation,
-            stationData.takenOverBtpgStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("CONT".equalsIgnoreCase(cleanClassification)) {
-        // CONT now includes both L and E
-        stationData.takenOverContStations.put(cleanStation,
-            stationData.takenOverContStations.getOrDefault(cleanStation, 0) + 1);
-    } else if ("SHRA".equalsIgnoreCase(cleanClassification)) {
-        stationData.takenOverShraStations.put(cleanStation,
-            stationData.takenOverShraStations.getOrDefault(cleanStation, 0) + 1);
-    } 
-}
-    /**
-     * Checks if a wagon type should be excluded from empties section
-     */
-    private boolean isExcludedWagonType(String wagonType) {
-        // List of wagon types to exclude from empties section
-        String[] excludedTypes = {
-            "BFK",
-            "BFKN", 
-            "BKI",
-            "BLC",
-            "BLL",
-            "BLLM",
-            "BLSS",
-            "BOXK"
-        };
-        
-        for (String excludedType : excludedTypes) {
-            if (excludedType.equalsIgnoreCase(wagonType)) {
-                return true; // This wagon type should be excluded
-            }
-        }
-        
-        return false; // This wagon type is allowed in empties
-    }
-    
-    /**
-     * NEW: Counts HANDEDOVER others - classifications not in main categories where L/E = "L"
-     */
-    private void countHandedOverOthers(StationData stationData, String classification, String le, String station) {
-        // Only count if L/E = "L" and both classification and station are not blank
-        if (!"L".equalsIgnoreCase(le != null ? le.trim() : "") || 
-            classification == null || classification.trim().isEmpty() ||
-            station == null || station.trim().isEmpty()) {
-            return;
-        }
-        
-        String cleanClassification = classification.trim();
-        String cleanStation = station.trim();
-        
-        // Check if this classification is NOT in the main 8 categories
-        if (!isMainClassification(cleanClassification)) {
-            // This is an "other" classification - format as "CLASSIFICATION[STATION]"
-            String otherKey = cleanClassification + "[" + cleanStation + "]";
-            
-            stationData.handedOverOthersStations.put(otherKey, 
-                stationData.handedOverOthersStations.getOrDefault(otherKey, 0) + 1);
-        }
-    }
-    
-    /**
-     * NEW: Counts TAKENOVER others - classifications not in main categories where L/E = "L"
-     */
-    private void countTakenOverOthers(StationData stationData, String classification, String le, String station) {
-        // Only count if L/E = "L" and both classification and station are not blank
-        if (!"L".equalsIgnoreCase(le != null ? le.trim() : "") || 
-            classification == null || classification.trim().isEmpty() ||
-            station == null || station.trim().isEmpty()) {
-            return;
-        }
-        
-        String cleanClassification = classification.trim();
-        String cleanStation = station.trim();
-        
-        // Check if this classification is NOT in the main 8 categories
-        if (!isMainClassification(cleanClassification)) {
-            // This is an "other" classification - format as "CLASSIFICATION[STATION]"
-            String otherKey = cleanClassification + "[" + cleanStation + "]";
-            
-            stationData.takenOverOthersStations.put(otherKey, 
-                stationData.takenOverOthersStations.getOrDefault(otherKey, 0) + 1);
-        }
-    }
-    
-    /**
-     * Checks if a classification is one of the main 6 categories
-     * UPDATED: Now only 6 main categories - BCACBM and NMG moved to "Others"
-     */
-    private boolean isMainClassification(String classification) {
-        String[] mainClassifications = {
-            "JUMBO",
-            "BOX", "BOXN",  // BOX and BOXN are both main classifications
-            "BTPN",
-            "BTPG", 
-            "CONT",
-            "SHRA"
-            // REMOVED: "BCACBM" and "NMG" - these will now be treated as "Others"
-        };
-        
-        for (String mainClass : mainClassifications) {
-            if (mainClass.equalsIgnoreCase(classification)) {
-                return true; // This is a main classification
-            }
-        }
-        
-        return false; // This is NOT a main classification - it's an "other"
-    }
-    
     /**
      * Helper method to write a cell with proper styling
      */
@@ -773,79 +556,23 @@ private void countTakenOverDetails(StationData stationData, String classificatio
         cell.setCellStyle(style);
     }
     
-    /**
-     * Converts workbook to byte array for download
-     */
-    private byte[] convertWorkbookToByteArray(Workbook workbook) throws Exception {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        byte[] data = outputStream.toByteArray();
-        outputStream.close();
-        return data;
-    }
-    
     /**
      * Writes classification details (station names and counts) into the given column, starting from startRow.
      */
-    private void fillClassificationColumn(Sheet sheet, int startRow, Map<String, Integer> stationMap, int columnIndex, CellStyle dataStyle) {
-        int rowOffset = 0;
-        for (Map.Entry<String, Integer> entry : stationMap.entrySet()) {
+    private void fillClassificationColumn(Sheet sheet, int startRow, StationData data, Direction direction,
+                                          Category category, int columnIndex, CellStyle dataStyle) {
+        int size = data.detailSize(direction, category);
+        for (int rowOffset = 0; rowOffset < size; rowOffset++) {
             Row row = sheet.getRow(startRow + rowOffset);
             if (row == null) {
                 row = sheet.createRow(startRow + rowOffset);
             }
-            String value = entry.getKey() + (entry.getValue() > 1 ? " (" + entry.getValue() + ")" : "");
+            int count = data.detailCount(direction, category, rowOffset);
+            String value = data.detailName(direction, category, rowOffset) + (count > 1 ? " (" + count + ")" : "");
             writeCell(row, columnIndex, value, dataStyle);
-            rowOffset++;
         }
     }
 
-    /**
-     * Data class to hold counts for each IC STTN
-     */
-    private static class StationData {
-        String icSttn;
-
-        // Constructor to initialize icSttn
-        StationData(String icSttn) {
-            this.icSttn = icSttn;
-        }
-        
-        // Train counts (station occurrences)
-        int handedOverTrainCount = 0;
-        int takenOverTrainCount = 0;
-        
-        // HANDEDOVER counts
-        int handedOverJumboL = 0, handedOverJumboE = 0;
-        int handedOverBoxnL = 0, handedOverBoxnE = 0;
-        int handedOverBtpnL = 0, handedOverBtpnE = 0;
-        
-        // TAKENOVER counts
-        int takenOverJumboL = 0, takenOverJumboE = 0;
-        int takenOverBoxnL = 0, takenOverBoxnE = 0;
-        int takenOverBtpnL = 0, takenOverBtpnE = 0;
-        
-        // HANDEDOVER station details (L only)
-        Map<String, Integer> handedOverJumboStations = new LinkedHashMap<>();
-        Map<String, Integer> handedOverBoxnStations = new LinkedHashMap<>();
-        Map<String, Integer> handedOverBtpnStations = new LinkedHashMap<>();
-        Map<String, Integer> handedOverBtpgStations = new LinkedHashMap<>();
-        Map<String, Integer> handedOverContStations = new LinkedHashMap<>();
-        Map<String, Integer> handedOverShraStations = new LinkedHashMap<>();
-        Map<String, Integer> handedOverOthersStations = new LinkedHashMap<>();  // NEW: Others (L only)
-        Map<String, Integer> handedOverEmptiesStations = new LinkedHashMap<>(); // Empties (E only)
-        
-        // TAKENOVER station details (L only)
-        Map<String, Integer> takenOverJumboStations = new LinkedHashMap<>();
-        Map<String, Integer> takenOverBoxnStations = new LinkedHashMap<>();
-        Map<String, Integer> takenOverBtpnStations = new LinkedHashMap<>();
-        Map<String, Integer> takenOverBtpgStations = new LinkedHashMap<>();
-        Map<String, Integer> takenOverContStations = new LinkedHashMap<>();
-        Map<String, Integer> takenOverShraStations = new LinkedHashMap<>();
-        Map<String, Integer> takenOverOthersStations = new LinkedHashMap<>();   // NEW: Others (L only)
-        Map<String, Integer> takenOverEmptiesStations = new LinkedHashMap<>();
-      }
-
     // Add these methods to ExcelWriterService.java
 
     /**
@@ -869,7 +596,7 @@ private void countTakenOverDetails(StationData stationData, String classificatio
      * Adds a TOTAL row at the end of all IC STTN data
      * Calculates sum of "No of Trains" and L+E for JUMBO, BOXN, BTPN
      */
-    private void addTotalRow(Sheet sheet, int nextRow, Map<String, StationData> groupedData, CellStyle dataStyle) {
+    private void addTotalRow(Sheet sheet, int nextRow, Map<String, StationData> groupedData, ExcelStylePool stylePool) {
         // Calculate totals
         TotalData totals = calculateTotals(groupedData);
 
@@ -878,7 +605,7 @@ private void countTakenOverDetails(StationData stationData, String classificatio
         Row totalRow = sheet.createRow(totalRowIndex);
 
         // Create or use a bold style for the total row
-        CellStyle totalStyle = createTotalRowStyle(sheet.getWorkbook());
+        CellStyle totalStyle = stylePool.named("total", this::createTotalRowStyle);
 
         // HANDEDOVER SECTION TOTALS
         writeCell(totalRow, 0, String.valueOf(totals.handedOverTrainTotal), totalStyle);  // No. of Trains
@@ -895,7 +622,7 @@ private void countTakenOverDetails(StationData stationData, String classificatio
         writeCell(totalRow, 15, formatLePlusE(totals.takenOverBoxnL, totals.takenOverBoxnE), totalStyle);    // BOXN L+E
         writeCell(totalRow, 16, formatLePlusE(totals.takenOverBtpnL, totals.takenOverBtpnE), totalStyle);    // BTPN L+E
 
-        System.out.println("TOTAL row added at row " + (totalRowIndex + 1) + " with calculated sums.");
+        log.debug("TOTAL row added at row {}", totalRowIndex + 1);
     }
 
     /**
@@ -906,26 +633,26 @@ private void countTakenOverDetails(StationData stationData, String classificatio
         
         for (StationData stationData : groupedData.values()) {
             // HANDEDOVER totals
-            totals.handedOverTrainTotal += stationData.handedOverTrainCount;
-            totals.handedOverJumboL += stationData.handedOverJumboL;
-            totals.handedOverJumboE += stationData.handedOverJumboE;
-            totals.handedOverBoxnL += stationData.handedOverBoxnL;
-            totals.handedOverBoxnE += stationData.handedOverBoxnE;
-            totals.handedOverBtpnL += stationData.handedOverBtpnL;
-            totals.handedOverBtpnE += stationData.handedOverBtpnE;
+            totals.handedOverTrainTotal += stationData.trainCount(Direction.HANDED_OVER);
+            totals.handedOverJumboL += stationData.count(Direction.HANDED_OVER, Category.JUMBO, StationData.L);
+            totals.handedOverJumboE += stationData.count(Direction.HANDED_OVER, Category.JUMBO, StationData.E);
+            totals.handedOverBoxnL += stationData.count(Direction.HANDED_OVER, Category.BOXN, StationData.L);
+            totals.handedOverBoxnE += stationData.count(Direction.HANDED_OVER, Category.BOXN, StationData.E);
+            totals.handedOverBtpnL += stationData.count(Direction.HANDED_OVER, Category.BTPN, StationData.L);
+            totals.handedOverBtpnE += stationData.count(Direction.HANDED_OVER, Category.BTPN, StationData.E);
             
             // TAKENOVER totals
-            totals.takenOverTrainTotal += stationData.takenOverTrainCount;
-            totals.takenOverJumboL += stationData.takenOverJumboL;
-            totals.takenOverJumboE += stationData.takenOverJumboE;
-            totals.takenOverBoxnL += stationData.takenOverBoxnL;
-            totals.takenOverBoxnE += stationData.takenOverBoxnE;
-            totals.takenOverBtpnL += stationData.takenOverBtpnL;
-            totals.takenOverBtpnE += stationData.takenOverBtpnE;
+            totals.takenOverTrainTotal += stationData.trainCount(Direction.TAKEN_OVER);
+            totals.takenOverJumboL += stationData.count(Direction.TAKEN_OVER, Category.JUMBO, StationData.L);
+            totals.takenOverJumboE += stationData.count(Direction.TAKEN_OVER, Category.JUMBO, StationData.E);
+            totals.takenOverBoxnL += stationData.count(Direction.TAKEN_OVER, Category.BOXN, StationData.L);
+            totals.takenOverBoxnE += stationData.count(Direction.TAKEN_OVER, Category.BOXN, StationData.E);
+            totals.takenOverBtpnL += stationData.count(Direction.TAKEN_OVER, Category.BTPN, StationData.L);
+            totals.takenOverBtpnE += stationData.count(Direction.TAKEN_OVER, Category.BTPN, StationData.E);
         }
         
-        System.out.println("Calculated totals: HANDEDOVER Trains=" + totals.handedOverTrainTotal + 
-                          ", TAKENOVER Trains=" + totals.takenOverTrainTotal);
+        log.debug("Calculated totals: HANDEDOVER trains={}, TAKENOVER trains={}",
+            totals.handedOverTrainTotal, totals.takenOverTrainTotal);
         return totals;
     }
 
@@ -951,9 +678,9 @@ private void countTakenOverDetails(StationData stationData, String classificatio
         // Group data by IC STTN and calculate L+E counts
         Map<String, StationData> groupedData = groupDataByIcSttn(classifiedData);
         
-        // Create styles
-        Workbook workbook = sheet.getWorkbook();
-        CellStyle dataStyle = styleService.createDataStyle(workbook);
+        // Create styles (shared through one pool per workbook)
+        ExcelStylePool stylePool = new ExcelStylePool(sheet.getWorkbook());
+        CellStyle dataStyle = stylePool.named("data", styleService::createDataStyle);
         
         // Write data starting from row 5 (index 4, after header rows 1-4)
         int currentRow = 4;
@@ -963,13 +690,13 @@ private void countTakenOverDetails(StationData stationData, String classificatio
             StationData stationData = entry.getValue();
             
             // Write complete data for this IC STTN (returns next available row)
-            currentRow = writeCompleteStationData(sheet, currentRow, icSttn, stationData, dataStyle);
+            currentRow = writeCompleteStationData(sheet, currentRow, icSttn, stationData, dataStyle, stylePool);
         }
         
         // NEW: Add TOTAL row after all data
-        addTotalRow(sheet, currentRow, groupedData, dataStyle);
+        addTotalRow(sheet, currentRow, groupedData, stylePool);
         
-        System.out.println("Excel writing completed. Data written for " + groupedData.size() + " IC STTN stations.");
+        log.debug("Excel writing completed for {} IC STTN stations", groupedData.size());
     }
 
     // Add this method to ExcelWriterService.java
@@ -977,59 +704,110 @@ private void countTakenOverDetails(StationData stationData, String classificatio
     /**
      * Creates a simple 10-column Excel file showing the intermediate processed data
      * This is for debugging/verification purposes
+     * Uses a streaming (SXSSF) workbook: only the last rows of the window stay in memory,
+     * older rows are flushed to a temp file until the workbook is written
      */
     public byte[] createIntermediateExcel(List<String[]> classifiedData) throws Exception {
-        // Create Excel workbook
-        Workbook workbook = new XSSFWorkbook();
-        
-        // Create the intermediate data sheet
-        Sheet intermediateSheet = workbook.createSheet("Intermediate 10-Column Data");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeIntermediateExcel(classifiedData, outputStream);
+        return outputStream.toByteArray();
+    }
+    
+    /**
+     * Writes the intermediate 10-column workbook to the given stream (not closed)
+     */
+    public void writeIntermediateExcel(List<String[]> classifiedData, OutputStream outputStream) throws Exception {
+        writeIntermediateExcel(classifiedData, outputStream, new ConversionStats());
+    }
+    
+    /**
+     * Same as writeIntermediateExcel, adding BUILD / SERIALIZE time, bytes written and styles to the given request stats
+     */
+    public void writeIntermediateExcel(List<String[]> classifiedData, OutputStream outputStream, ConversionStats stats) throws Exception {
+        long buildStart = System.nanoTime();
         
-        // Create basic styles
-        CellStyle headerStyle = createIntermediateHeaderStyle(workbook);
-        CellStyle dataStyle = createIntermediateDataStyle(workbook);
+        // Create streaming Excel workbook with a bounded row window
+        SXSSFWorkbook workbook = new SXSSFWorkbook(intermediateRowWindow);
+        workbook.setCompressTempFiles(compressTempFiles);
         
-        // Write header row
-        if (!classifiedData.isEmpty()) {
-            Row headerRow = intermediateSheet.createRow(0);
-            String[] headers = classifiedData.get(0);
+        try {
+            // Create the intermediate data sheet
+            Sheet intermediateSheet = workbook.createSheet("Intermediate 10-Column Data");
             
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-                cell.setCellStyle(headerStyle);
+            // Create basic styles
+            CellStyle headerStyle = createIntermediateHeaderStyle(workbook);
+            CellStyle dataStyle = createIntermediateDataStyle(workbook);
+            
+            // Longest value per column, tracked while writing (replaces autoSizeColumn)
+            int[] maxColumnChars = new int[10];
+            
+            // Write header row
+            if (!classifiedData.isEmpty()) {
+                Row headerRow = intermediateSheet.createRow(0);
+                String[] headers = classifiedData.get(0);
+                
+                for (int i = 0; i < headers.length; i++) {
+                    Cell cell = headerRow.createCell(i);
+                    cell.setCellValue(headers[i]);
+                    cell.setCellStyle(headerStyle);
+                    trackColumnChars(maxColumnChars, i, headers[i]);
+                }
             }
-        }
-        
-        // Write data rows
-        for (int i = 1; i < classifiedData.size(); i++) {
-            Row dataRow = intermediateSheet.createRow(i);
-            String[] rowData = classifiedData.get(i);
             
-            for (int j = 0; j < rowData.length; j++) {
-                Cell cell = dataRow.createCell(j);
-                cell.setCellValue(rowData[j] != null ? rowData[j] : "");
-                cell.setCellStyle(dataStyle);
+            // Write data rows
+            for (int i = 1; i < classifiedData.size(); i++) {
+                Row dataRow = intermediateSheet.createRow(i);
+                String[] rowData = classifiedData.get(i);
+                
+                for (int j = 0; j < rowData.length; j++) {
+                    Cell cell = dataRow.createCell(j);
+                    cell.setCellValue(rowData[j] != null ? rowData[j] : "");
+                    cell.setCellStyle(dataStyle);
+                    trackColumnChars(maxColumnChars, j, rowData[j]);
+                }
             }
-        }
-        
-        // Auto-size columns for better readability
-        for (int i = 0; i < 10; i++) {
-            intermediateSheet.autoSizeColumn(i);
-            // Set minimum width to prevent too narrow columns
-            if (intermediateSheet.getColumnWidth(i) < 3000) {
-                intermediateSheet.setColumnWidth(i, 3000);
+            
+            // Set column widths from the tracked estimate
+            for (int i = 0; i < 10; i++) {
+                intermediateSheet.setColumnWidth(i, estimateColumnWidth(maxColumnChars[i]));
             }
+            
+            stats.addWorkbookStructure(workbook.getNumCellStyles(), 0);
+            
+            // Write the workbook straight to the output stream
+            long serializeStart = System.nanoTime();
+            stats.addStageNanos(ConversionStats.Stage.BUILD, serializeStart - buildStart);
+            CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+            workbook.write(countingStream);
+            stats.addStageNanos(ConversionStats.Stage.SERIALIZE, System.nanoTime() - serializeStart);
+            stats.addBytesOut(countingStream.getByteCount());
+            
+            log.atInfo().setMessage("Intermediate Excel created")
+                .addKeyValue("rows", Math.max(classifiedData.size() - 1, 0))
+                .log();
+        } finally {
+            // Delete the temp files backing the flushed rows and close workbook
+            workbook.dispose();
+            workbook.close();
         }
-        
-        // Convert to byte array
-        byte[] excelData = convertWorkbookToByteArray(workbook);
-        
-        // Close workbook
-        workbook.close();
-        
-        System.out.println("✅ Intermediate 10-column Excel created with " + (classifiedData.size() - 1) + " data rows.");
-        return excelData;
+    }
+    
+    /**
+     * Records the longest value seen for a column
+     */
+    private void trackColumnChars(int[] maxColumnChars, int columnIndex, String value) {
+        if (value != null && columnIndex < maxColumnChars.length && value.length() > maxColumnChars[columnIndex]) {
+            maxColumnChars[columnIndex] = value.length();
+        }
+    }
+    
+    /**
+     * Estimates a column width (1/256th of a character) from the longest value
+     * Keeps the same minimum width of 3000 and Excel's maximum of 255 characters
+     */
+    private int estimateColumnWidth(int maxChars) {
+        int width = (Math.min(maxChars, 253) + 2) * 256;
+        return Math.max(width, 3000);
     }
 
     /**
@@ -0,0 +1,92 @@
+package com.company.csvconverter.service;
+
+import java.util.Arrays;
+
+/**
+ * Insertion-ordered counts keyed by long ids (symbol ids or packed id pairs)
+ * Open addressing over primitive arrays: incrementing an existing key allocates nothing,
+ * and iterating by index returns the keys in first-seen order (like a LinkedHashMap).
+ */
+final class IdCounts {
+
+    private long[] keys = new long[4];
+    private int[] counts = new int[4];
+    private int size = 0;
+
+    // Hash slots hold index + 1 into keys / counts, 0 marks a free slot
+    private int[] slots = new int[8];
+
+    void increment(long key) {
+        add(key, 1);
+    }
+
+    /**
+     * Adds delta to the count of a key and returns the key's index (its first-seen position)
+     */
+    int add(long key, int delta) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0) {
+            int index = slots[slot] - 1;
+            if (keys[index] == key) {
+                counts[index] += delta;
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        int index = size;
+        keys[index] = key;
+        counts[index] = delta;
+        size++;
+        slots[slot] = size;
+
+        // Keep the load factor at or below 1/2
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return index;
+    }
+
+    /**
+     * Adds all counts of another map; keys new to this map are appended in the other map's order
+     */
+    void addAll(IdCounts other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.keys[i], other.counts[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long keyAt(int index) {
+        return keys[index];
+    }
+
+    int countAt(int index) {
+        return counts[index];
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
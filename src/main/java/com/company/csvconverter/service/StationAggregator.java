@@ -0,0 +1,173 @@
+package com.company.csvconverter.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the per IC STTN aggregates directly from streamed 10-column rows
+ * Rows are never stored or sorted: only the groups are ordered by zone / IC STTN at the end,
+ * so memory depends on the number of distinct stations, not on the number of rows
+ */
+public class StationAggregator {
+
+    // Groups by IC STTN (after zone transformation), in no particular order
+    private final Map<String, StationGroup> groups = new HashMap<>();
+
+    // Cell values of all groups, so partial aggregates of one IC STTN can be merged by id
+    private final SymbolTable symbols;
+
+    private int rowCount = 0;
+
+    public StationAggregator() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * Aggregates rows that were parsed with the given symbol table, reusing its analysed values
+     */
+    StationAggregator(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Adds one classified, zone-transformed 10-column row
+     */
+    public void accept(String[] row) {
+        String icSttn = row[1];
+        SymbolTable.Token zone = symbols.token(row[0]);
+        String cleanIcSttn = symbols.token(icSttn).upperName;
+
+        int orderKey = zone.zoneRank * (ZoneOrder.UNKNOWN + 1) + ZoneOrder.icSttnRank(zone.upperName, cleanIcSttn);
+
+        StationGroup group = groups.get(icSttn);
+        if (group == null) {
+            group = new StationGroup(icSttn, cleanIcSttn, symbols);
+            groups.put(icSttn, group);
+        }
+        group.bucket(orderKey, rowCount).add(row);
+        rowCount++;
+    }
+
+    /**
+     * Adds the groups of an aggregator that consumed the rows directly following the rows of this one
+     * (the next chunk of the same file); the result is the same as one aggregator over all rows.
+     * Chunks must be merged in file order.
+     */
+    void mergeFrom(StationAggregator other) {
+        for (StationGroup otherGroup : other.groups.values()) {
+            StationGroup group = groups.get(otherGroup.icSttn);
+            if (group == null) {
+                group = new StationGroup(otherGroup.icSttn, otherGroup.cleanIcSttn, symbols);
+                groups.put(otherGroup.icSttn, group);
+            }
+            for (Map.Entry<Integer, StationData> bucket : otherGroup.buckets.entrySet()) {
+                int orderKey = bucket.getKey();
+                group.bucket(orderKey, rowCount + otherGroup.firstRowIndex.get(orderKey)).mergeFrom(bucket.getValue());
+            }
+        }
+        rowCount += other.rowCount;
+    }
+
+    /**
+     * Number of data rows added so far
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Number of distinct IC STTN groups so far
+     */
+    public int getStationCount() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the station aggregates in report order: the same order the groups get when the
+     * rows are stably sorted by zone / IC STTN and then grouped by first occurrence
+     */
+    Map<String, StationData> toOrderedMap() {
+        List<StationGroup> orderedGroups = new ArrayList<>(groups.values());
+        orderedGroups.sort(StationGroup::compareTo);
+
+        Map<String, StationData> orderedData = new LinkedHashMap<>();
+        for (StationGroup group : orderedGroups) {
+            orderedData.put(group.icSttn, group.toStationData());
+        }
+        return orderedData;
+    }
+
+    /**
+     * All rows of one IC STTN, split by their (zone rank, IC STTN rank) order key
+     * An IC STTN that shows up under several zones is sorted into several places of the row order,
+     * so each order key keeps its own partial aggregate and they are merged in key order at the end
+     */
+    private static class StationGroup implements Comparable<StationGroup> {
+        final String icSttn;
+        final String cleanIcSttn;
+        final SymbolTable symbols;
+        final TreeMap<Integer, StationData> buckets = new TreeMap<>();
+
+        // Row index of the first row of each bucket (ties in the sort keep file order)
+        final Map<Integer, Integer> firstRowIndex = new HashMap<>();
+
+        // Almost every IC STTN has a single order key: remember the last bucket to skip the boxed lookup
+        int lastOrderKey = -1;
+        StationData lastBucket;
+
+        StationGroup(String icSttn, String cleanIcSttn, SymbolTable symbols) {
+            this.icSttn = icSttn;
+            this.cleanIcSttn = cleanIcSttn;
+            this.symbols = symbols;
+        }
+
+        StationData bucket(int orderKey, int rowIndex) {
+            if (orderKey == lastOrderKey) {
+                return lastBucket;
+            }
+
+            StationData bucket = buckets.get(orderKey);
+            if (bucket == null) {
+                bucket = new StationData(icSttn, symbols);
+                buckets.put(orderKey, bucket);
+                firstRowIndex.put(orderKey, rowIndex);
+            }
+            lastOrderKey = orderKey;
+            lastBucket = bucket;
+            return bucket;
+        }
+
+        StationData toStationData() {
+            if (buckets.size() == 1) {
+                return buckets.firstEntry().getValue();
+            }
+
+            StationData merged = new StationData(icSttn, symbols);
+            for (StationData bucket : buckets.values()) {
+                merged.mergeFrom(bucket);
+            }
+            return merged;
+        }
+
+        @Override
+        public int compareTo(StationGroup other) {
+            // A group is placed where its first row lands in the sorted row order
+            int thisKey = buckets.firstKey();
+            int otherKey = other.buckets.firstKey();
+            if (thisKey != otherKey) {
+                return Integer.compare(thisKey, otherKey);
+            }
+
+            int byName = cleanIcSttn.compareTo(other.cleanIcSttn);
+            if (byName != 0) {
+                return byName;
+            }
+
+            return Integer.compare(firstRowIndex.get(thisKey), other.firstRowIndex.get(otherKey));
+        }
+    }
+}
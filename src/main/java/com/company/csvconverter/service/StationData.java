@@ -0,0 +1,177 @@
+package com.company.csvconverter.service;
+
+/**
+ * Data class to hold counts for each IC STTN
+ * Counts are updated one 10-column row at a time, so a report only needs these aggregates.
+ * All counters are primitive arrays indexed by (direction, category, L/E) and the per-station details are
+ * IdCounts keyed by SymbolTable ids, so adding a row allocates nothing once its values have been seen.
+ */
+class StationData {
+    
+    enum Direction { HANDED_OVER, TAKEN_OVER }
+    
+    // Detail columns in report order; the L+E summary columns are JUMBO, BOXN and BTPN
+    enum Category { JUMBO, BOXN, BTPN, BTPG, CONT, SHRA, OTHERS, EMPTIES }
+    
+    // L/E index
+    static final int L = 0;
+    static final int E = 1;
+    
+    private static final int DIRECTIONS = Direction.values().length;
+    private static final int CATEGORIES = Category.values().length;
+    
+    String icSttn;
+    
+    // Shared by every StationData of one aggregation, so details can be merged by id
+    private final SymbolTable symbols;
+    
+    // Train counts (station occurrences) by direction
+    private final int[] trainCounts = new int[DIRECTIONS];
+    
+    // L/E counts by (direction, category, L/E)
+    private final int[] leCounts = new int[DIRECTIONS * CATEGORIES * 2];
+    
+    // Station details by (direction, category): station ids, wagon type ids for EMPTIES,
+    // packed (classification id, station id) pairs for OTHERS
+    private final IdCounts[] details = new IdCounts[DIRECTIONS * CATEGORIES];
+    
+    StationData(String icSttn, SymbolTable symbols) {
+        this.icSttn = icSttn;
+        this.symbols = symbols;
+        for (int i = 0; i < details.length; i++) {
+            details[i] = new IdCounts();
+        }
+    }
+    
+    /**
+     * Adds one row of the 10-column classified data (8 extracted + 2 classified) to the counts
+     */
+    void add(String[] row) {
+        // HANDED OVER STTN TO, L/E, TYPE, TYPE CLASSIFICATION (classified)
+        addMovement(Direction.HANDED_OVER, row[2], row[3], row[4], row[5]);
+        
+        // TAKEN OVER STTN TO, L/E, TYPE, TYPE CLASSIFICATION (classified)
+        addMovement(Direction.TAKEN_OVER, row[6], row[7], row[8], row[9]);
+    }
+    
+    private void addMovement(Direction direction, String sttn, String le, String type, String classification) {
+        SymbolTable.Token station = symbols.token(sttn);
+        SymbolTable.Token loadState = symbols.token(le);
+        SymbolTable.Token wagonType = symbols.token(type);
+        SymbolTable.Token classified = symbols.token(classification);
+        Category category = classified.category;
+        
+        // Station occurrences (ignore blanks)
+        if (station.id != SymbolTable.NO_ID) {
+            trainCounts[direction.ordinal()]++;
+        }
+        
+        // JUMBO / BOXN / BTPN by L and E
+        if (loadState.le != SymbolTable.NO_ID && category != null && category.ordinal() <= Category.BTPN.ordinal()) {
+            leCounts[leIndex(direction, category, loadState.le)]++;
+        }
+        
+        if (station.id != SymbolTable.NO_ID && category != null) {
+            if (category == Category.OTHERS) {
+                // Non-main classifications (L only), listed as "CLASSIFICATION[STATION]"
+                if (loadState.le == L) {
+                    details(direction, Category.OTHERS).increment(pair(classified.id, station.id));
+                }
+            } else if (loadState.le == L || (category == Category.CONT && loadState.le == E)) {
+                // Main classifications by station (L only, EXCEPT CONT which includes L+E)
+                details(direction, category).increment(station.id);
+            }
+        }
+        
+        // Empties (E only) by wagon type - excluding CONT classification and the excluded wagon types
+        if (!classified.cont && loadState.le == E && wagonType.emptyTypeId != SymbolTable.NO_ID) {
+            details(direction, Category.EMPTIES).increment(wagonType.emptyTypeId);
+        }
+    }
+    
+    /**
+     * Adds all counts of another partial aggregate for the same IC STTN
+     * Detail entries of the other aggregate are appended after the existing ones (same order as row-by-row adding).
+     * An aggregate built with another symbol table (e.g. another parse chunk) has its ids translated by name.
+     */
+    void mergeFrom(StationData other) {
+        for (int i = 0; i < trainCounts.length; i++) {
+            trainCounts[i] += other.trainCounts[i];
+        }
+        for (int i = 0; i < leCounts.length; i++) {
+            leCounts[i] += other.leCounts[i];
+        }
+        for (int i = 0; i < details.length; i++) {
+            if (other.symbols == symbols) {
+                details[i].addAll(other.details[i]);
+                continue;
+            }
+            
+            IdCounts source = other.details[i];
+            boolean pairs = i % CATEGORIES == Category.OTHERS.ordinal();
+            for (int j = 0; j < source.size(); j++) {
+                details[i].add(translate(source.keyAt(j), other.symbols, pairs), source.countAt(j));
+            }
+        }
+    }
+    
+    int trainCount(Direction direction) {
+        return trainCounts[direction.ordinal()];
+    }
+    
+    int count(Direction direction, Category category, int le) {
+        return leCounts[leIndex(direction, category, le)];
+    }
+    
+    /**
+     * Number of detail entries (distinct stations / wagon types) of a category
+     */
+    int detailSize(Direction direction, Category category) {
+        return details(direction, category).size();
+    }
+    
+    /**
+     * Label of a detail entry in first-seen order: station, wagon type or "CLASSIFICATION[STATION]"
+     */
+    String detailName(Direction direction, Category category, int index) {
+        long key = details(direction, category).keyAt(index);
+        if (category == Category.OTHERS) {
+            return symbols.name((int) (key >>> 32)) + "[" + symbols.name((int) key) + "]";
+        }
+        return symbols.name((int) key);
+    }
+    
+    int detailCount(Direction direction, Category category, int index) {
+        return details(direction, category).countAt(index);
+    }
+    
+    /**
+     * Largest number of detail entries across all categories of both directions
+     */
+    int maxDetailSize() {
+        int maxSize = 0;
+        for (IdCounts detail : details) {
+            maxSize = Math.max(maxSize, detail.size());
+        }
+        return maxSize;
+    }
+    
+    private IdCounts details(Direction direction, Category category) {
+        return details[direction.ordinal() * CATEGORIES + category.ordinal()];
+    }
+    
+    private static int leIndex(Direction direction, Category category, int le) {
+        return (direction.ordinal() * CATEGORIES + category.ordinal()) * 2 + le;
+    }
+    
+    private long translate(long key, SymbolTable source, boolean pair) {
+        if (pair) {
+            return pair(symbols.id(source.name((int) (key >>> 32))), symbols.id(source.name((int) key)));
+        }
+        return symbols.id(source.name((int) key));
+    }
+    
+    private static long pair(int first, int second) {
+        return ((long) first << 32) | second;
+    }
+}
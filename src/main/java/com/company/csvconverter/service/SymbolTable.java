@@ -0,0 +1,199 @@
+package com.company.csvconverter.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the cell values of one request: every distinct trimmed value gets a dense int id,
+ * and every distinct raw value is analysed once (trim, upper case, zone rank, classification category, L/E)
+ * Parsing replaces each cell by the canonical instance of its value, so rows share one String per
+ * distinct value and every later lookup is a hash hit on that instance instead of trim().toUpperCase().
+ * Not thread-safe: one table per request.
+ */
+final class SymbolTable {
+
+    static final int NO_ID = -1;
+
+    // Wagon types that are never listed under EMPTIES
+    private static final String[] EXCLUDED_EMPTY_TYPES = {"BFK", "BFKN", "BKI", "BLC", "BLL", "BLLM", "BLSS", "BOXK"};
+
+    // Stands in for null cells, which ZoneOrder treats like blank ones
+    private static final Token NULL = new Token(null, NO_ID, NO_ID, "", null, NO_ID, false, NO_ID, ZoneOrder.zoneRank(""));
+
+    // Classification cache value for wagon types the snapshot does not know
+    private static final String UNCLASSIFIED = new String("");
+
+    private final Map<String, Token> tokens = new HashMap<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    // Classification by upper-case wagon type id (null: not looked up yet); the snapshot is fixed per request
+    private String[] classifications = new String[64];
+    private ClassificationSnapshot classificationSnapshot;
+
+    // Upper-case ids used by the zone transformation rule
+    private final int nwId = id("NW");
+    private final int cnaId = id("CNA");
+
+    /**
+     * Analysis of a raw cell value
+     */
+    Token token(String raw) {
+        if (raw == null) {
+            return NULL;
+        }
+
+        Token token = tokens.get(raw);
+        if (token == null) {
+            token = createToken(raw);
+            tokens.put(raw, token);
+        }
+        return token;
+    }
+
+    /**
+     * Id of an already trimmed value
+     */
+    int id(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * The canonical instance of a raw cell value (equal to it, shared by all rows)
+     */
+    String canonical(String raw) {
+        return raw != null ? token(raw).raw : null;
+    }
+
+    /**
+     * Category of a wagon type in the given snapshot, null when blank or unclassified
+     * Every distinct upper-case wagon type is looked up once; a table only serves one snapshot.
+     */
+    String classification(Token wagonType, ClassificationSnapshot snapshot) {
+        if (wagonType.upperId == NO_ID) {
+            return null;
+        }
+        if (classificationSnapshot != snapshot) {
+            if (classificationSnapshot != null) {
+                throw new IllegalStateException("Symbol table is already bound to another classification snapshot");
+            }
+            classificationSnapshot = snapshot;
+        }
+
+        if (wagonType.upperId >= classifications.length) {
+            classifications = Arrays.copyOf(classifications, Math.max(wagonType.upperId + 1, classifications.length * 2));
+        }
+        String classification = classifications[wagonType.upperId];
+        if (classification == null) {
+            classification = snapshot.getClassification(wagonType.upperName);
+            classifications[wagonType.upperId] = classification != null ? canonical(classification) : UNCLASSIFIED;
+        }
+        return classification != UNCLASSIFIED ? classification : null;
+    }
+
+    /**
+     * The zone transformation rule: ZONE TO = NW and IC STTN = CNA become IC STTN AII
+     */
+    boolean isTransformedToAii(Token zone, Token icSttn) {
+        return zone.upperId == nwId && icSttn.upperId == cnaId;
+    }
+
+    String name(int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    private Token createToken(String raw) {
+        String value = raw.trim();
+        if (value.isEmpty()) {
+            return new Token(raw, NO_ID, NO_ID, "", null, NO_ID, false, NO_ID, ZoneOrder.zoneRank(""));
+        }
+
+        String upperValue = value.toUpperCase();
+        int upperId = id(upperValue);
+        upperValue = name(upperId);
+        int le = "L".equals(upperValue) ? StationData.L : "E".equals(upperValue) ? StationData.E : NO_ID;
+        int emptyTypeId = isExcludedEmptyType(upperValue) ? NO_ID : upperId;
+        return new Token(raw, id(value), upperId, upperValue, category(value), le, "CONT".equalsIgnoreCase(raw),
+            emptyTypeId, ZoneOrder.zoneRank(upperValue));
+    }
+
+    /**
+     * Classification category of a trimmed value: the six main classifications (BOX counts as BOXN),
+     * OTHERS for everything else
+     */
+    private static StationData.Category category(String classification) {
+        if ("JUMBO".equalsIgnoreCase(classification)) {
+            return StationData.Category.JUMBO;
+        } else if ("BOX".equalsIgnoreCase(classification) || "BOXN".equalsIgnoreCase(classification)) {
+            return StationData.Category.BOXN;
+        } else if ("BTPN".equalsIgnoreCase(classification)) {
+            return StationData.Category.BTPN;
+        } else if ("BTPG".equalsIgnoreCase(classification)) {
+            return StationData.Category.BTPG;
+        } else if ("CONT".equalsIgnoreCase(classification)) {
+            return StationData.Category.CONT;
+        } else if ("SHRA".equalsIgnoreCase(classification)) {
+            return StationData.Category.SHRA;
+        }
+        return StationData.Category.OTHERS;
+    }
+
+    private static boolean isExcludedEmptyType(String wagonType) {
+        for (String excludedType : EXCLUDED_EMPTY_TYPES) {
+            if (excludedType.equals(wagonType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * What the aggregation needs to know about one raw cell value, whichever column it came from
+     */
+    static final class Token {
+        // First-seen instance of the raw value
+        final String raw;
+        // Id of the trimmed value, NO_ID when blank
+        final int id;
+        // Id of the trimmed, upper-case value (as used for zones, IC STTNs and wagon type lookups), NO_ID when blank
+        final int upperId;
+        // The trimmed, upper-case value ("" when blank)
+        final String upperName;
+        // Category when used as a classification, null when blank
+        final StationData.Category category;
+        // StationData.L / StationData.E when used as L/E, NO_ID otherwise
+        final int le;
+        // The untrimmed value is CONT (such classifications never count as empties)
+        final boolean cont;
+        // Id of the upper-cased value when used as a wagon type under EMPTIES, NO_ID when excluded or blank
+        final int emptyTypeId;
+        // ZoneOrder rank when used as ZONE TO
+        final int zoneRank;
+
+        Token(String raw, int id, int upperId, String upperName, StationData.Category category, int le,
+              boolean cont, int emptyTypeId, int zoneRank) {
+            this.raw = raw;
+            this.id = id;
+            this.upperId = upperId;
+            this.upperName = upperName;
+            this.category = category;
+            this.le = le;
+            this.cont = cont;
+            this.emptyTypeId = emptyTypeId;
+            this.zoneRank = zoneRank;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.company.csvconverter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control for the synchronous conversion endpoints, keyed on estimated memory
+ * Every request estimates its working set from the upload size (and the rows it implies) and takes that many bytes
+ * from a global budget (a fair semaphore, one permit per KB). When the budget is exhausted the request
+ * waits in arrival order for up to max-wait-ms and is then rejected. A request estimated larger than the
+ * whole budget is admitted alone.
+ */
+@Service
+public class UploadAdmissionService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadAdmissionService.class);
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    @Value("${converter.admission.enabled:true}")
+    private boolean enabled = true;
+
+    // Memory budget shared by all conversions in flight (0 = half of the maximum heap)
+    @Value("${converter.admission.budget-mb:0}")
+    private long budgetMb = 0;
+
+    // How long a request waits for budget before it is rejected with 503
+    @Value("${converter.admission.max-wait-ms:5000}")
+    private long maxWaitMs = 5000;
+
+    @Value("${converter.admission.retry-after-seconds:10}")
+    private int retryAfterSeconds = 10;
+
+    // Working-set estimate: the upload bytes held while parsing, plus the rows
+    // (row list, both workbooks and their Base64 copies) for endpoints that keep them
+    @Value("${converter.admission.bytes-per-upload-byte:2}")
+    private long bytesPerUploadByte = 2;
+
+    @Value("${converter.admission.bytes-per-row:512}")
+    private long bytesPerRow = 512;
+
+    // Rows are estimated from the upload size (no extra pass over the upload): size / csv-bytes-per-row,
+    // kept below the typical CSV row size so the estimate errs on the high side
+    @Value("${converter.admission.csv-bytes-per-row:32}")
+    private long csvBytesPerRow = 32;
+
+    private Semaphore budget;
+    private int budgetKb;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        long budgetBytes = budgetMb > 0 ? budgetMb << 20 : Runtime.getRuntime().maxMemory() / 2;
+        budgetKb = (int) Math.min(Integer.MAX_VALUE, budgetBytes >> 10);
+        budget = new Semaphore(budgetKb, true);
+
+        // Outside Spring Boot (benchmarks, tools) there is no registry bean: keep meters in memory
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        Gauge.builder("converter.admission.budget.used", () -> (long) (budgetKb - budget.availablePermits()) << 10)
+            .description("Estimated memory of the conversions in flight")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("converter.admission.budget.limit", () -> (long) budgetKb << 10)
+            .description("Memory budget for conversions in flight")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("converter.admission.waiting", budget, Semaphore::getQueueLength)
+            .description("Requests waiting for memory budget")
+            .register(registry);
+        rejected = Counter.builder("converter.admission.rejected")
+            .description("Requests rejected because the memory budget was exhausted")
+            .register(registry);
+    }
+
+    /**
+     * Takes the estimated working set of a conversion from the budget, waiting up to max-wait-ms
+     * keepsRows: the endpoint holds all rows and builds both workbooks (/upload), not just aggregates (/convert)
+     * Throws RejectedExecutionException when the budget stays exhausted; close the permit when done
+     */
+    public Permit admit(MultipartFile file, boolean keepsRows) throws InterruptedException {
+        return admit(List.of(file), keepsRows);
+    }
+
+    /**
+     * Admits a batch of uploads converted together as one request, against the sum of their estimates
+     */
+    public Permit admit(List<MultipartFile> files, boolean keepsRows) throws InterruptedException {
+        if (!enabled) {
+            return new Permit(0);
+        }
+
+        long estimate = 0;
+        for (MultipartFile file : files) {
+            estimate += file.getSize() * bytesPerUploadByte;
+            if (keepsRows) {
+                estimate += file.getSize() / Math.max(1, csvBytesPerRow) * bytesPerRow;
+            }
+        }
+        int permits = (int) Math.min(budgetKb, Math.max(1, estimate >> 10));
+
+        if (!budget.tryAcquire(permits, maxWaitMs, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            log.atWarn().setMessage("Conversion rejected, memory budget exhausted")
+                .addKeyValue("estimatedMb", estimate >> 20)
+                .addKeyValue("availableMb", budget.availablePermits() >> 10)
+                .addKeyValue("waiting", budget.getQueueLength())
+                .log();
+            throw new RejectedExecutionException("Memory budget exhausted");
+        }
+        return new Permit(permits);
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Budget held by one admitted conversion; closing it (again) is safe
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final int permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() {
+            if (permits > 0 && released.compareAndSet(false, true)) {
+                budget.release(permits);
+            }
+        }
+    }
+}
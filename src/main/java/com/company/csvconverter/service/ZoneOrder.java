@@ -0,0 +1,108 @@
+package com.company.csvconverter.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Report ordering rules: ZONE TO in the order CR, WC, NW, DFCR,
+ * then IC STTN in the specified order within each zone, then alphabetically
+ * The order tables are built once and shared by the row sort and the station aggregator
+ */
+final class ZoneOrder {
+    
+    // Rank used for zones / IC STTNs that are not in the order tables
+    static final int UNKNOWN = 999;
+    
+    // Define the zone order
+    private static final String[] ZONE_ORDER = {"CR", "WC", "NW", "DFCR"};
+    
+    private static final Map<String, Integer> ZONE_ORDER_MAP = new HashMap<>();
+    private static final Map<String, Map<String, Integer>> IC_STTN_ORDER_MAPS = new HashMap<>();
+    
+    // IC STTN order within each zone
+    private static final Map<String, String[]> IC_STTN_ORDER_BY_ZONE = new HashMap<>();
+    
+    static {
+        for (int i = 0; i < ZONE_ORDER.length; i++) {
+            ZONE_ORDER_MAP.put(ZONE_ORDER[i], i);
+        }
+        
+        // Define IC STTN order within each zone
+        IC_STTN_ORDER_BY_ZONE.put("CR", new String[]{"BSR", "JL", "KNW"});
+        IC_STTN_ORDER_BY_ZONE.put("WC", new String[]{"SHRN", "NAD", "MKC", "MTA", "CNA"});
+        IC_STTN_ORDER_BY_ZONE.put("NW", new String[]{"BEC", "AII", "HMT", "BLDI", "PNU"});
+        IC_STTN_ORDER_BY_ZONE.put("DFCR", new String[]{"BHU", "CECC", "GGM", "MSH", "SAU", "MPR", "GTX", "NOL", "SJN", "SAH"});
+        
+        // Create order maps for IC STTN within each zone
+        for (Map.Entry<String, String[]> entry : IC_STTN_ORDER_BY_ZONE.entrySet()) {
+            String[] icSttnOrder = entry.getValue();
+            Map<String, Integer> orderMap = new HashMap<>();
+            for (int i = 0; i < icSttnOrder.length; i++) {
+                orderMap.put(icSttnOrder[i], i);
+            }
+            IC_STTN_ORDER_MAPS.put(entry.getKey(), orderMap);
+        }
+    }
+    
+    private ZoneOrder() {
+    }
+    
+    /**
+     * Rank of a normalized zone, UNKNOWN if the zone is not in the order table
+     */
+    static int zoneRank(String zone) {
+        return ZONE_ORDER_MAP.getOrDefault(zone, UNKNOWN);
+    }
+    
+    /**
+     * Rank of a normalized IC STTN within a normalized zone
+     * Zones without an order table rank every IC STTN the same (alphabetical order decides)
+     */
+    static int icSttnRank(String zone, String icSttn) {
+        Map<String, Integer> icSttnOrderMap = IC_STTN_ORDER_MAPS.get(zone);
+        if (icSttnOrderMap == null) {
+            return 0;
+        }
+        return icSttnOrderMap.getOrDefault(icSttn, UNKNOWN);
+    }
+    
+    /**
+     * Zones in report order
+     */
+    static String[] zones() {
+        return ZONE_ORDER.clone();
+    }
+    
+    /**
+     * IC STTNs of a zone in report order (empty for zones without an order table)
+     */
+    static String[] icSttns(String zone) {
+        String[] icSttnOrder = IC_STTN_ORDER_BY_ZONE.get(zone);
+        return icSttnOrder != null ? icSttnOrder.clone() : new String[0];
+    }
+    
+    /**
+     * Compares two (ZONE TO, IC STTN) pairs: zone order first, then IC STTN order
+     * within the zone, then IC STTN alphabetically
+     * The tokens carry the normalized values and zone ranks, so nothing is trimmed or upper-cased here
+     */
+    static int compare(SymbolTable.Token zone1, SymbolTable.Token icSttn1, SymbolTable.Token zone2, SymbolTable.Token icSttn2) {
+        // First sort by zone order
+        if (zone1.zoneRank != zone2.zoneRank) {
+            return Integer.compare(zone1.zoneRank, zone2.zoneRank);
+        }
+        
+        // If zones are the same, sort by IC STTN order within that zone
+        int icSttn1Order = icSttnRank(zone1.upperName, icSttn1.upperName);
+        int icSttn2Order = icSttnRank(zone2.upperName, icSttn2.upperName);
+        if (icSttn1Order != icSttn2Order) {
+            return Integer.compare(icSttn1Order, icSttn2Order);
+        }
+        
+        // Same rank (or both unknown): sort alphabetically by IC STTN
+        if (icSttn1.upperId == icSttn2.upperId) {
+            return 0;
+        }
+        return icSttn1.upperName.compareTo(icSttn2.upperName);
+    }
+}